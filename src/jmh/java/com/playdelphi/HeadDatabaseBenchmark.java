@@ -0,0 +1,87 @@
+package com.playdelphi;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Getting a reward head: HeadDatabaseHook's bound handle and cache, against the lookup it
+ * replaced, which found the API class and its getItemHead method by reflection for every
+ * head.
+ *
+ * Head Database needs a running server, so a stand-in API returns copies of 64 heads from
+ * a map. The real getItemHead decodes a texture into a new skull item on every call, which
+ * the stand-in doesn't model, so the cached numbers here understate what the cache saves.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadDatabaseBenchmark {
+    static final int HEADS = 64;
+
+    // Stands in for me.arcaniax.hdb.api.HeadDatabaseAPI
+    public static class StandInApi {
+        private final Map<String, ItemStack> heads = new HashMap<>();
+
+        public StandInApi() {
+            for (int i = 0; i < HEADS; i++) {
+                heads.put(String.valueOf(i), new ItemStack(Material.PLAYER_HEAD));
+            }
+        }
+
+        public ItemStack getItemHead(String headId) {
+            ItemStack head = heads.get(headId);
+            return head == null ? null : head.clone();
+        }
+    }
+
+    String[] headIds;
+    Object headDatabaseAPI;
+    HeadDatabaseHook hook;
+    int next;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        headIds = new String[HEADS];
+        for (int i = 0; i < HEADS; i++) {
+            headIds[i] = String.valueOf(i);
+        }
+        headDatabaseAPI = new StandInApi();
+        hook = HeadDatabaseHook.bind(StandInApi.class);
+        hook.prewarm(List.of(headIds));
+    }
+
+    private String nextHeadId() {
+        return headIds[next++ & (HEADS - 1)];
+    }
+
+    @Benchmark
+    public ItemStack hookCached() {
+        return hook.getHead(nextHeadId());
+    }
+
+    // RewardManager.getHeadItem before the hook, with the stand-in's class name
+    @Benchmark
+    public ItemStack reflectivePerCall() throws ReflectiveOperationException {
+        Class<?> apiClass = Class.forName(StandInApi.class.getName());
+        return (ItemStack) apiClass.getMethod("getItemHead", String.class)
+            .invoke(headDatabaseAPI, nextHeadId());
+    }
+}
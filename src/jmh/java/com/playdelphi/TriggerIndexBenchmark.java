@@ -0,0 +1,105 @@
+package com.playdelphi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding the triggers one vote fires: TriggerIndex against the loop it replaced, which
+ * read every trigger's settings back out of reward_triggers.yml on every vote.
+ *
+ * The triggers are generated: a tenth repeat, a quarter count server votes, and the rest
+ * are one-off player milestones. Each call moves on to the next vote count, so milestones
+ * and repeats fire about as often as they would on a server.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriggerIndexBenchmark {
+
+    @Param({"30", "300"})
+    int triggers;
+
+    ConfigurationSection triggerTable;
+    TriggerIndex index;
+    int playerVoteCount;
+    int serverVoteCount;
+
+    @Setup
+    public void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+        for (int i = 0; i < triggers; i++) {
+            String key = "trigger_" + i;
+            boolean repeat = i % 10 == 0;
+            config.set(key + ".trigger_user", i % 4 == 0 ? "server" : "player");
+            config.set(key + ".trigger_threshold", repeat ? 5 * (1 + i % 20) : 1 + i * 7);
+            config.set(key + ".trigger_repeat", repeat);
+            config.set(key + ".trigger_rewards", List.of("reward_" + i));
+        }
+        triggerTable = config;
+        index = TriggerIndex.compile(triggerTable, Logger.getLogger("DelphiVote"));
+    }
+
+    @Benchmark
+    public List<RewardTrigger> index() {
+        return index.match(++playerVoteCount, ++serverVoteCount);
+    }
+
+    @Benchmark
+    public List<String> yamlLoop() {
+        int player = ++playerVoteCount;
+        int server = ++serverVoteCount;
+        List<String> fired = new ArrayList<>();
+        for (String triggerKey : triggerTable.getKeys(false)) {
+            ConfigurationSection trigger = triggerTable.getConfigurationSection(triggerKey);
+            if (evaluateTrigger(trigger, player, server)) {
+                fired.add(triggerKey);
+            }
+        }
+        return fired;
+    }
+
+    // RewardManager.evaluateTrigger before the index
+    private static boolean evaluateTrigger(ConfigurationSection trigger, int playerVoteCount, int serverVoteCount) {
+        String triggerUser = trigger.getString("trigger_user");
+        int triggerThreshold = trigger.getInt("trigger_threshold", 0);
+        boolean triggerRepeat = trigger.getBoolean("trigger_repeat", true);
+
+        if (triggerThreshold == 0) {
+            return true;
+        }
+
+        if (triggerUser.equals("player")) {
+            if (triggerRepeat) {
+                return playerVoteCount % triggerThreshold == 0;
+            } else {
+                return playerVoteCount == triggerThreshold;
+            }
+        } else if (triggerUser.equals("server")) {
+            if (triggerRepeat) {
+                return serverVoteCount % triggerThreshold == 0;
+            } else {
+                return serverVoteCount == triggerThreshold;
+            }
+        }
+        return false;
+    }
+}
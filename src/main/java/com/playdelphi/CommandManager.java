@@ -4,7 +4,7 @@ import com.playdelphi.exceptions.*;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
-import java.util.UUID;
+import java.util.function.Consumer;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.ComponentBuilder;
 import net.md_5.bungee.api.chat.HoverEvent;
@@ -73,10 +73,16 @@ public class CommandManager implements CommandExecutor {
                     return false;
                 case "help":
                     return handleHelp(playerEnv);
+                case "import":
+                    return handleImport(playerEnv, args);
                 case "info":
                     return handleInfo(playerEnv);
                 case "list":
                     return handleStats(playerEnv, args); // alias for stats
+                case "metrics":
+                    return handleMetrics(playerEnv);
+                case "recount":
+                    return handleRecount(playerEnv);
                 case "playerenvs":
                     return handleListPlayerEnvs(playerEnv);
                 case "reload":
@@ -85,6 +91,8 @@ public class CommandManager implements CommandExecutor {
                     return handleListRewards(playerEnv);
                 case "stats":
                     return handleStats(playerEnv, args);
+                case "top":
+                    return handleTop(playerEnv, args);
                 case "triggers":
                     return handleListTriggers(playerEnv);
                 case "players":
@@ -158,11 +166,9 @@ public class CommandManager implements CommandExecutor {
             return true;
         }
 
-        // Get target PlayerEnv
-        PlayerEnv tgt_playerEnv = playerEnvManager.getPlayerEnv(tgt_playerName);
-
-        // Process rewards
-        rewardManager.handleRewards(playerEnv, tgt_playerEnv, "Admin", rewardName);
+        // Process rewards once the target player is resolved
+        withTargetPlayer(playerEnv, tgt_playerName, tgt_playerEnv ->
+            rewardManager.handleRewards(playerEnv, tgt_playerEnv, "Admin", rewardName));
         return true;   
     }
 
@@ -182,11 +188,9 @@ public class CommandManager implements CommandExecutor {
             playerEnv.sendMessage(languageManager.getMessage("give_vote_fail"));
             return true;
         }
-        
-        PlayerEnv tgt_playerEnv = playerEnvManager.getPlayerEnv(tgt_playerName);
 
-        // Process vote
-        voteManager.handleVote(playerEnv, tgt_playerEnv, "Admin");
+        // Queue vote, target player is resolved off the main thread
+        voteManager.handleVote(playerEnv, tgt_playerName, "Admin");
         return true;
     }
 
@@ -196,7 +200,8 @@ public class CommandManager implements CommandExecutor {
             return true;
         }
 
-        rewardManager.expireRewards();
+        // chunked deletes can take a while, run it with the other maintenance jobs
+        plugin.getMaintenanceManager().runNow("expire_rewards");
         return true;
     }
 
@@ -213,6 +218,7 @@ public class CommandManager implements CommandExecutor {
             playerEnv.sendMessage(languageManager.getMessage("help_vote"));
             playerEnv.sendMessage(languageManager.getMessage("help_stats"));
             playerEnv.sendMessage(languageManager.getMessage("help_stats_player"));
+            playerEnv.sendMessage(languageManager.getMessage("help_top"));
         }
 
         if (checkPerm(playerEnv, "admin")) {
@@ -258,14 +264,82 @@ public class CommandManager implements CommandExecutor {
         return true;
     }
 
+    // log vote processing metrics to console (admin)
+    private boolean handleMetrics(PlayerEnv playerEnv) {
+        if (handlePermission(playerEnv, "admin")) {
+            return true;
+        }
+
+        logger.info("Vote pipeline: " + voteManager.getVotePipeline().getQueuedVotes() + " votes queued, "
+            + voteManager.getParkedVotes() + " waiting in the vote journal to be submitted again");
+        logger.info(databaseManager.getVoteBatchWriter().getStats());
+        logger.info("Vote counters: " + databaseManager.getVoteCounter().getServerVotes() + " votes from "
+            + databaseManager.getVoteCounter().getPlayerCount() + " players");
+        logger.info(plugin.getUUIDResolver().getStats());
+        logger.info(utilsManager.getStats());
+        logger.info(plugin.getMaintenanceManager().getStats());
+        logger.info(rewardManager.getRewardDelivery().getStats());
+        logger.info(rewardManager.getRewardCommands().getStats());
+        if (databaseManager.getVoteStore().isMigrating()) {
+            logger.info("Database migrations are still running in the background");
+        }
+        if (voteManager.getVoteJournal() != null) {
+            logger.info("Vote journal: " + voteManager.getVoteJournal().getPendingCount() + " uncommitted votes");
+        }
+        if (voteManager.getVoteDedupWindow() != null) {
+            logger.info("Vote dedup: " + voteManager.getVoteDedupWindow().getDuplicates() + " duplicate votes ignored");
+        }
+        return true;
+    }
+
+    // verify and rebuild in-memory vote counters from the votes table (admin)
+    private boolean handleRecount(PlayerEnv playerEnv) {
+        if (handlePermission(playerEnv, "admin")) {
+            return true;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            logger.info(databaseManager.rebuildVoteCounts());
+        });
+        return true;
+    }
+
+    // import vote history from another plugin (admin)
+    private boolean handleImport(PlayerEnv playerEnv, String[] args) {
+        if (handlePermission(playerEnv, "admin")) {
+            return true;
+        }
+        if (args.length < 3) {
+            playerEnv.sendMessage(languageManager.getMessage("import_usage"));
+            return true;
+        }
+
+        playerEnv.sendMessage(languageManager.getMessage("import_started"));
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                databaseManager.importVotes(args[1], args[2], args.length > 3 ? args[3] : null);
+            } catch (ImportException e) {
+                logger.severe("Vote import failed: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
     // list players (admin)
     private boolean handleListPlayers(PlayerEnv playerEnv) {
         if (handlePermission(playerEnv, "admin")) {
             return true;
         }
 
-        List<UUID> allPlayers = databaseManager.getAllPlayersUUID();
-        logger.info("All Player UUIDs: " + allPlayers.toString());
+        // a page per line, read in the background
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            int[] players = new int[1];
+            databaseManager.forEachPlayerPage(1000, page -> {
+                players[0] += page.size();
+                logger.info("Player UUIDs: " + page);
+            });
+            logger.info("All players: " + players[0]);
+        });
         return true;
     }
 
@@ -298,6 +372,8 @@ public class CommandManager implements CommandExecutor {
         plugin.reloadConfig();
         configManager.loadConfigs();
         languageManager.loadLanguageConfigs();
+        rewardManager.loadRewards();
+        rewardManager.loadTriggers();
         playerEnv.sendMessage(languageManager.getMessage("plugin_reload_true"));
         return true;
     }
@@ -316,34 +392,89 @@ public class CommandManager implements CommandExecutor {
             playerEnv.sendMessage(languageManager.getMessage("total_server_votes", Map.of("total_votes", String.valueOf(totalVotes))));
 
             // top 10 voters
-            List<Map.Entry<String, Integer>> topVoters = databaseManager.getTopVoters(10);
-            int rank = 1;
-            for (Map.Entry<String, Integer> entry : topVoters) {
-                playerEnv.sendMessage(languageManager.getMessage("top_voter_item", Map.of("rank", String.valueOf(rank), "player", entry.getKey(), "votes", String.valueOf(entry.getValue()))));
-                rank++;
+            List<VoteLeaderboard.Entry> topVoters = databaseManager.getTopVoters(10);
+            for (VoteLeaderboard.Entry entry : topVoters) {
+                sendLeaderboardEntry(playerEnv, entry);
             }
             playerEnv.sendMessage(languageManager.getMessage("top_voters_last_item"));
             playerEnv.sendMessage(languageManager.getMessage("top_voters_footer"));
         } else {
-            // Show stats for a specific player
-            String tgt_playerName = args[1];
-
-            // Get target PlayerEnv
-            PlayerEnv tgt_playerEnv = playerEnvManager.getPlayerEnv(tgt_playerName);
-
-            Map<String, Object> playerStats = databaseManager.getPlayerVoteStats(tgt_playerEnv);
-            if (playerStats != null) {
-                playerEnv.sendMessage(languageManager.getMessage("player_stats_header", Map.of("player", tgt_playerEnv.name)));
-                playerEnv.sendMessage(languageManager.getMessage("player_stats_votes", Map.of("votes", String.valueOf(playerStats.get("totalVotes")))));
-                if (playerStats.get("lastVoteDate") != null) {
-                    playerEnv.sendMessage(languageManager.getMessage("player_stats_last_vote", Map.of("last_vote", String.valueOf(playerStats.get("lastVoteDate")))));
+            // Show stats for a specific player once they're resolved
+            withTargetPlayer(playerEnv, args[1], tgt_playerEnv -> sendPlayerStats(playerEnv, tgt_playerEnv));
+        }
+        return true;
+    }
+
+    // top 10 voters for a rolling period, all time if none is given
+    private boolean handleTop(PlayerEnv playerEnv, String[] args) {
+        if (handlePermission(playerEnv, "player")) {
+            return true;
+        }
+
+        VotePeriod period = args.length > 1 ? VotePeriod.fromString(args[1]) : VotePeriod.ALL_TIME;
+        if (period == null) {
+            playerEnv.sendMessage(languageManager.getMessage("help_top"));
+            return true;
+        }
+
+        String periodName = languageManager.getMessage("stats_period_" + period.name().toLowerCase());
+        playerEnv.sendMessage(languageManager.getMessage("top_voters_period_header", Map.of("period", periodName)));
+        for (VoteLeaderboard.Entry entry : databaseManager.getTopVoters(period, 10)) {
+            sendLeaderboardEntry(playerEnv, entry);
+        }
+        playerEnv.sendMessage(languageManager.getMessage("top_voters_last_item"));
+        playerEnv.sendMessage(languageManager.getMessage("top_voters_footer"));
+        return true;
+    }
+
+    // Stats for a specific player
+    private void sendPlayerStats(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv) {
+        PlayerVoteStats playerStats = databaseManager.getPlayerVoteStats(tgt_playerEnv);
+        if (playerStats != null) {
+            playerEnv.sendMessage(languageManager.getMessage("player_stats_header", Map.of("player", tgt_playerEnv.name)));
+            playerEnv.sendMessage(languageManager.getMessage("player_stats_votes", Map.of("votes", String.valueOf(playerStats.totalVotes()))));
+            if (playerStats.lastVote() != null) {
+                playerEnv.sendMessage(languageManager.getMessage("player_stats_last_vote", Map.of("last_vote", String.valueOf(playerStats.lastVote()))));
+            }
+
+            // rank and the players around it
+            VoteLeaderboard leaderboard = databaseManager.getVoteLeaderboard();
+            int rank = leaderboard.getRank(tgt_playerEnv.uuid);
+            if (rank > 0) {
+                playerEnv.sendMessage(languageManager.getMessage("player_stats_rank", Map.of("rank", String.valueOf(rank), "players", String.valueOf(leaderboard.size()))));
+                for (VoteLeaderboard.Entry entry : leaderboard.getAround(tgt_playerEnv.uuid, 2)) {
+                    sendLeaderboardEntry(playerEnv, entry);
                 }
-            } else {
-                playerEnv.sendMessage(languageManager.getMessage("player_not_found", Map.of("player", tgt_playerEnv.name)));
             }
-            playerEnv.sendMessage(languageManager.getMessage("player_stats_footer"));
+        } else {
+            playerEnv.sendMessage(languageManager.getMessage("player_not_found", Map.of("player", tgt_playerEnv.name)));
         }
-        return true;
+        playerEnv.sendMessage(languageManager.getMessage("player_stats_footer"));
+    }
+
+    // Resolve a command's target player off the main thread, it may wait on the database or the
+    // Mojang API, then carry on with them on the main thread
+    private void withTargetPlayer(PlayerEnv playerEnv, String tgt_playerName, Consumer<PlayerEnv> action) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            PlayerEnv tgt_playerEnv;
+            try {
+                tgt_playerEnv = playerEnvManager.getPlayerEnv(tgt_playerName);
+            } catch (PlayerNotFoundException e) {
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    playerEnv.sendMessage(languageManager.getMessage("player_not_found", Map.of("player", e.getMessage()))));
+                return;
+            } catch (Exception e) {
+                logger.severe("Error looking up player " + tgt_playerName + ": " + e.getMessage());
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    playerEnv.sendMessage(languageManager.getMessage("plugin_error")));
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> action.accept(tgt_playerEnv));
+        });
+    }
+
+    private void sendLeaderboardEntry(PlayerEnv playerEnv, VoteLeaderboard.Entry entry) {
+        playerEnv.sendMessage(languageManager.getMessage("top_voter_item", Map.of("rank", String.valueOf(entry.rank()), "player", entry.playerName(), "votes", String.valueOf(entry.votes()))));
     }
 
     // list vote sites
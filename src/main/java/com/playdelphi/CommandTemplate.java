@@ -0,0 +1,50 @@
+package com.playdelphi;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * CommandTemplate is a reward command from reward_items.yml, split around its {player}
+ * placeholders when the rewards load so a grant only joins the pieces.
+ *
+ * The prefix, the command's first word, is what /vote metrics times commands by and what
+ * reward_commands.coalesce matches against.
+ */
+
+public final class CommandTemplate {
+    private static final String PLAYER = "{player}";
+
+    private final String[] parts;
+    private final int length;
+    private final String prefix;
+
+    public CommandTemplate(String command) {
+        String text = command.startsWith("/") ? command.substring(1) : command;
+        this.parts = text.split(Pattern.quote(PLAYER), -1);
+        this.length = text.length();
+        int space = text.indexOf(' ');
+        this.prefix = (space < 0 ? text : text.substring(0, space)).toLowerCase(Locale.ROOT);
+    }
+
+    // The command for a player
+    public String render(String playerName) {
+        if (parts.length == 1) {
+            return parts[0];
+        }
+        StringBuilder command = new StringBuilder(length + 16 * (parts.length - 1));
+        command.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            command.append(playerName).append(parts[i]);
+        }
+        return command.toString();
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(PLAYER, parts);
+    }
+}
@@ -0,0 +1,103 @@
+package com.playdelphi;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+
+/**
+ * CronSchedule matches wall clock minutes against a five field cron expression:
+ *
+ *   minute hour day-of-month month day-of-week
+ *
+ * Each field is '*', a number, a range 'a-b', a step '*' + '/n' or 'a-b/n', or a comma
+ * separated list of those. Day of week runs 0-7 with both 0 and 7 meaning Sunday. As in
+ * cron, when both day fields are restricted a day matching either one is a match.
+ */
+
+public class CronSchedule {
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    // Parse an expression, throws IllegalArgumentException if it isn't valid
+    public CronSchedule(String expression) {
+        this.expression = expression.trim();
+        String[] fields = this.expression.split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("expected 5 fields, got " + fields.length);
+        }
+        minutes = parseField(fields[0], 0, 59);
+        hours = parseField(fields[1], 0, 23);
+        daysOfMonth = parseField(fields[2], 1, 31);
+        months = parseField(fields[3], 1, 12);
+        daysOfWeek = parseField(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        anyDayOfMonth = fields[2].equals("*");
+        anyDayOfWeek = fields[4].equals("*");
+    }
+
+    // True if the schedule fires in the minute starting at time
+    public boolean matches(LocalDateTime time) {
+        if (!minutes.get(time.getMinute()) || !hours.get(time.getHour()) || !months.get(time.getMonthValue())) {
+            return false;
+        }
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static BitSet parseField(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = parseNumber(part.substring(0, part.indexOf('-')), min, max);
+                to = parseNumber(part.substring(part.indexOf('-') + 1), from, max);
+            } else {
+                from = parseNumber(part, min, max);
+                to = slash >= 0 ? max : from;
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseNumber(String text, int min, int max) {
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + text + "' is not a number");
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(value + " is outside " + min + "-" + max);
+        }
+        return value;
+    }
+}
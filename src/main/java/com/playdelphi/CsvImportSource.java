@@ -0,0 +1,257 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.ImportException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * CsvImportSource reads votes from a CSV file with a header row naming its columns:
+ *
+ *   uuid     (required) player UUID, also player_uuid
+ *   name     player name, also player_name, player, last_name
+ *   service  voting site, also vote_service, site; 'Import' when missing
+ *   time     when the vote was made, also vote_ts, timestamp, date, last_vote
+ *   votes    a vote total instead of one vote per line, also vote_count, count, total
+ *
+ * Without a votes column each line is one vote and needs a time. Times are epoch
+ * milliseconds or seconds, or ISO dates and times; times without a zone are UTC. Fields
+ * are separated by commas, semicolons or tabs, whichever the header uses, and may be
+ * quoted. The position is the number of lines read after the header.
+ */
+
+public class CsvImportSource implements ImportSource {
+    private final Path path;
+    private BufferedReader reader;
+    private char separator = ',';
+    private int uuidColumn = -1;
+    private int nameColumn = -1;
+    private int serviceColumn = -1;
+    private int timeColumn = -1;
+    private int votesColumn = -1;
+    private long line;
+    private long skipped;
+
+    // Constructor
+    public CsvImportSource(String location) throws ImportException {
+        this.path = Paths.get(location);
+        if (!Files.isRegularFile(path)) {
+            throw new ImportException("No CSV file at " + path.toAbsolutePath());
+        }
+        readHeader();
+    }
+
+    @Override
+    public boolean singleVotes() {
+        return votesColumn < 0;
+    }
+
+    @Override
+    public void open(String position) throws ImportException {
+        long skip = position == null ? 0 : Long.parseLong(position);
+        try {
+            reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            reader.readLine();
+            for (line = 0; line < skip && reader.readLine() != null; line++) {
+                // already imported
+            }
+        } catch (IOException e) {
+            throw new ImportException("Error opening " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ImportedVote next() throws ImportException {
+        try {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) continue;
+                ImportedVote vote = readLine(parseLine(text, separator));
+                if (vote != null) {
+                    return vote;
+                }
+                skipped++;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new ImportException("Error reading " + path + " at line " + (line + 1) + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String position() {
+        return String.valueOf(line);
+    }
+
+    @Override
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // read only, nothing to lose
+        }
+    }
+
+    // Find the columns and the separator from the header row
+    private void readHeader() throws ImportException {
+        String header;
+        try (BufferedReader headerReader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            header = headerReader.readLine();
+        } catch (IOException e) {
+            throw new ImportException("Error reading " + path + ": " + e.getMessage(), e);
+        }
+        if (header == null) {
+            throw new ImportException(path + " is empty");
+        }
+        header = header.replace("\uFEFF", ""); // byte order mark
+        for (char candidate : new char[] {';', '\t'}) {
+            if (count(header, candidate) > count(header, separator)) {
+                separator = candidate;
+            }
+        }
+
+        List<String> columns = parseLine(header, separator);
+        for (int i = 0; i < columns.size(); i++) {
+            switch (columns.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "uuid": case "player_uuid":
+                    uuidColumn = i;
+                    break;
+                case "name": case "player_name": case "player": case "last_name":
+                    nameColumn = i;
+                    break;
+                case "service": case "vote_service": case "site":
+                    serviceColumn = i;
+                    break;
+                case "time": case "vote_ts": case "timestamp": case "date": case "last_vote":
+                    timeColumn = i;
+                    break;
+                case "votes": case "vote_count": case "count": case "total":
+                    votesColumn = i;
+                    break;
+            }
+        }
+        if (uuidColumn < 0) {
+            throw new ImportException(path + " has no uuid column");
+        }
+        if (votesColumn < 0 && timeColumn < 0) {
+            throw new ImportException(path + " needs a time column for single votes or a votes column for vote totals");
+        }
+    }
+
+    // A line as a vote, null if it's missing the UUID, a vote count or a single vote's time
+    private ImportedVote readLine(List<String> fields) {
+        String uuidText = field(fields, uuidColumn);
+        UUID uuid;
+        try {
+            uuid = uuidText == null ? null : UUID.fromString(uuidText);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (uuid == null) {
+            return null;
+        }
+        String time = field(fields, timeColumn);
+        long voteTime = time == null ? 0 : parseTime(time);
+        String service = field(fields, serviceColumn);
+        if (service == null) {
+            service = "Import";
+        }
+
+        if (votesColumn < 0) {
+            return voteTime > 0 ? new ImportedVote(uuid, field(fields, nameColumn), service, voteTime, 1, false) : null;
+        }
+        int votes;
+        try {
+            votes = Integer.parseInt(field(fields, votesColumn));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return votes > 0 ? new ImportedVote(uuid, field(fields, nameColumn), service, voteTime, votes, true) : null;
+    }
+
+    // Trimmed field, null if the column is missing or blank
+    private static String field(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // Epoch milliseconds for a time, 0 if it can't be read
+    static long parseTime(String text) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            long value = Long.parseLong(text);
+            return value < 100_000_000_000L ? value * 1000 : value; // seconds until the year 5138
+        }
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+            String iso = text.replace(' ', 'T');
+            if (iso.endsWith("Z")) {
+                return Instant.parse(iso).toEpochMilli();
+            }
+            if (iso.matches(".*[+-]\\d\\d:?\\d\\d$")) {
+                return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    // Split a line on the separator, honouring double quotes and "" inside them
+    private static List<String> parseLine(String text, char separator) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int count(String text, char c) {
+        return (int) text.chars().filter(ch -> ch == c).count();
+    }
+}
@@ -1,393 +1,346 @@
 package com.playdelphi;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import java.io.File;
-import java.lang.String;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
-import java.util.AbstractMap;
+import com.playdelphi.exceptions.ImportException;
+import com.playdelphi.exceptions.StoreException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import org.bukkit.configuration.ConfigurationSection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import org.bukkit.configuration.file.FileConfiguration;
 
 public class DatabaseManager {
     private final DelphiVote plugin;
     private FileConfiguration config;
-    private ConfigManager configManager;
-	private File datafolder;
 	private Logger logger;
-    private HikariDataSource dataSource;
-    private LanguageManager languageManager;
-    private boolean isMySQL;
     private String dbType;
-    private String tablePrefix;
-    private String votesTable;
-    private String playersTable;
-    private String offlineRewardsTable;
+    private VoteStore voteStore;
+    private int rollupAfterDays;
+    private int rollupChunkSize;
+    private int deleteChunkSize;
+    private long chunkPauseMs;
+    private VoteBatchWriter voteBatchWriter;
+    private final VoteCounter voteCounter = new VoteCounter();
+    private final Object writeLock = new Object(); // orders vote batches with recounts, never held by readers
+    private final VoteLeaderboard voteLeaderboard = new VoteLeaderboard();
+    private final VoteWindowLeaderboards voteWindowLeaderboards = new VoteWindowLeaderboards();
+    private final AtomicBoolean importRunning = new AtomicBoolean();
 
     
     // Constructor
     public DatabaseManager(DelphiVote plugin) {
         this.plugin = plugin;
         this.config = plugin.getConfig();
-        this.datafolder = plugin.getDataFolder();
         this.logger = plugin.getLogger();
-        this.configManager = plugin.getConfigManager();
-        this.languageManager = plugin.getLanguageManager();
         this.dbType = config.getString("database.type", "sqlite");
-        this.isMySQL = "mysql".equalsIgnoreCase(dbType);
-        initializeDatabase();
-        createTables();
-    }
-
-    // Initialize database
-    private void initializeDatabase() {
-        tablePrefix = config.getString("database.table_prefix");
-        votesTable = tablePrefix + "_votes";
-        playersTable = tablePrefix + "_players";
-        offlineRewardsTable = tablePrefix + "_offline_rewards";
-
-        // Create data subfolder if it doesn't exist
-        File databaseFolder = new File(datafolder, "data");
-        if (!databaseFolder.exists()) {
-            databaseFolder.mkdirs(); 
+        this.voteStore = createVoteStore();
+
+        // rolling leaderboards read the last month of raw votes, so keep at least that much
+        rollupAfterDays = config.getInt("vote_history.rollup_after_days", 0);
+        if (rollupAfterDays > 0 && rollupAfterDays <= VotePeriod.MONTH.hours / 24) {
+            logger.warning("vote_history.rollup_after_days must be more than " + VotePeriod.MONTH.hours / 24 + ", using " + (VotePeriod.MONTH.hours / 24 + 1));
+            rollupAfterDays = VotePeriod.MONTH.hours / 24 + 1;
         }
+        rollupChunkSize = Math.max(1, config.getInt("vote_history.rollup_chunk_size", 5000));
+        deleteChunkSize = Math.max(1, config.getInt("maintenance.delete_chunk_size", 5000));
+        chunkPauseMs = Math.max(0, config.getLong("maintenance.chunk_pause_ms", 50));
+
+        loadVoteCounts();
+        this.voteBatchWriter = new VoteBatchWriter(plugin, this,
+            config.getLong("database.batch_window_ms", 50), config.getInt("database.batch_size", 100));
+    }
 
-        HikariConfig hikariConfig = new HikariConfig();
-
-        if (isMySQL) {
-            hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getString("database.host") + ":" + config.getInt("database.port") + "/" + config.getString("database.database"));
-            hikariConfig.setUsername(config.getString("database.username"));
-            hikariConfig.setPassword(config.getString("database.password"));
-            hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
-            hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
-            hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        } else {
-            hikariConfig.setJdbcUrl("jdbc:sqlite:" + datafolder.getAbsolutePath() + "/data/delphivote.db");
-            hikariConfig.setDriverClassName("org.sqlite.JDBC");
+    // Storage for database.type
+    private VoteStore createVoteStore() {
+        switch (dbType.toLowerCase()) {
+            case "mysql":
+                return new JdbcVoteStore(plugin, true);
+            case "memory":
+                logger.warning("database.type is memory, votes will be lost when the server stops");
+                return new MemoryVoteStore();
+            case "file":
+                return new FileVoteStore(plugin);
+            case "sqlite":
+                return new JdbcVoteStore(plugin, false);
+            default:
+                logger.severe("Unknown database.type '" + dbType + "', using sqlite");
+                return new JdbcVoteStore(plugin, false);
         }
+    }
+
+    // Queue vote for the votes table, the future completes when the vote's batch commits
+    public CompletableFuture<VoteCounts> addVote(VoteBatchWriter.QueuedVote vote) {
+        return voteBatchWriter.submit(vote);
+    }
 
-        hikariConfig.setMaximumPoolSize(10);
+    // Wait for queued votes to be written
+    public void flushVotes() {
+        voteBatchWriter.flush();
+    }
 
-        dataSource = new HikariDataSource(hikariConfig);
+    public VoteBatchWriter getVoteBatchWriter() {
+        return voteBatchWriter;
     }
 
-    // Create tables
-    private void createTables() {
-        // YamlConfiguration databaseConfig = YamlConfiguration.loadConfiguration(new InputStreamReader(plugin.getResource("database.yml"), StandardCharsets.UTF_8));
-        FileConfiguration databaseConfig = configManager.getResourceConfig("database.yml");
-        ConfigurationSection tablesSection = databaseConfig.getConfigurationSection("tables");
-        
-        if (tablesSection == null) {
-            logger.severe("No table definitions found in database.yml");
-            return;
-        }
+    public VoteStore getVoteStore() {
+        return voteStore;
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            for (String tableName : tablesSection.getKeys(false)) {
-                ConfigurationSection tableSection = tablesSection.getConfigurationSection(tableName);
-                if (tableSection == null) continue;
-
-                StringBuilder createTableSQL = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tablePrefix + "_" + tableName + " (");
-                
-                for (String fieldName : tableSection.getKeys(false)) {
-                    ConfigurationSection fieldSection = tableSection.getConfigurationSection(fieldName);
-                    String fieldDef;
-                    
-                    if (fieldSection != null) {
-                        // Field has separate SQLite and MySQL definitions
-                        fieldDef = isMySQL ? fieldSection.getString("mysql") : fieldSection.getString("sqlite");
-                    } else {
-                        // Field has a single definition for both database types
-                        fieldDef = tableSection.getString(fieldName);
-                    }
-                    
-                    if (fieldDef == null) continue;
-                    
-                    createTableSQL.append(fieldName).append(" ").append(fieldDef).append(", ");
-                }
-                
-                createTableSQL.setLength(createTableSQL.length() - 2);  // Remove last comma and space
-                createTableSQL.append(")");
-                
-                stmt.execute(createTableSQL.toString());
-                // logger.info("Created table: " + tablePrefix + "_" + tableName);
-                
-                // If mysql, create index on player_uuid for faster lookups in votes table
-                if (tableName.equals("votes")) {
-                    if (isMySQL) {
-                        try {
-                            stmt.execute("CREATE INDEX idx_player_uuid ON " + tablePrefix + "_" + tableName + " (player_uuid)");
-                        } catch (SQLException e) {
-                            // Ignore error if index already exists (MySQL error code 1061)
-                            if (e.getErrorCode() != 1061) {
-                                throw e;
-                            }
-                        }
-                    }
+    // Write a batch of votes in one transaction, returns the vote counts as of each vote; a replayed
+    // vote the store already had is counted once, with the counts as they are now
+    List<VoteCounts> writeVoteBatch(List<VoteBatchWriter.QueuedVote> batch) throws StoreException {
+        // a recount can't run between commit and increment; the counter itself is only locked for
+        // each increment, so the main thread reading it never waits on the database
+        synchronized (writeLock) {
+            voteStore.insertVotes(batch);
+
+            List<VoteCounts> counts = new ArrayList<>(batch.size());
+            long now = System.currentTimeMillis();
+            for (VoteBatchWriter.QueuedVote vote : batch) {
+                if (vote.duplicate) {
+                    counts.add(new VoteCounts(voteCounter.getPlayerVotes(vote.tgt_playerEnv.uuid), voteCounter.getServerVotes()));
+                    continue;
                 }
+                VoteCounts voteCounts = voteCounter.increment(vote.tgt_playerEnv.uuid);
+                voteLeaderboard.setName(vote.tgt_playerEnv.uuid, vote.tgt_playerEnv.name);
+                voteLeaderboard.update(vote.tgt_playerEnv.uuid, voteCounts.playerVoteCount());
+                voteWindowLeaderboards.setName(vote.tgt_playerEnv.uuid, vote.tgt_playerEnv.name);
+                voteWindowLeaderboards.add(vote.tgt_playerEnv.uuid, now, now);
+                counts.add(voteCounts);
             }
-        } catch (SQLException e) {
-            logger.severe("Error creating tables: " + e.getMessage());
+            return counts;
         }
     }
 
-    // Add vote to votes table
-    public void addVote(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, String serviceName) {
-        String sql = "INSERT INTO " + votesTable + " (player_uuid, player_name, vote_service, vote_ts) VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            pstmt.setString(2, tgt_playerEnv.name);
-            pstmt.setString(3, serviceName);
-            pstmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            logger.severe("Error adding vote: " + e.getMessage()); 
+    // Load vote counters and leaderboards from the votes table
+    private void loadVoteCounts() {
+        Map<UUID, Integer> counts = voteStore.countVotesByPlayer();
+        if (counts != null) {
+            Map<UUID, String> names = voteStore.getLatestPlayerNames(counts.keySet());
+            voteCounter.load(counts);
+            voteLeaderboard.load(counts, names);
+            loadVoteWindows(names);
+            logger.info("Loaded vote counts: " + voteCounter.getServerVotes() + " votes from " + voteCounter.getPlayerCount() + " players");
         }
     }
 
-    // Get player vote count
-    public int getPlayerVoteCount(PlayerEnv tgt_playerEnv) {
-        String sql = "SELECT COUNT(*) FROM " + votesTable + " WHERE player_uuid = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
-                }
+    // Compare vote counters with the votes table and reload them, returns a summary
+    public String rebuildVoteCounts() {
+        synchronized (writeLock) {
+            int serverVotes = voteCounter.getServerVotes();
+            Map<UUID, Integer> counts = voteStore.countVotesByPlayer();
+            if (counts == null) {
+                return "Vote counters not rebuilt, unable to read the votes table";
             }
-            
-        } catch (SQLException e) {
-            logger.severe("Error getting player vote count: " + e.getMessage());
+            int mismatches = voteCounter.countMismatches(counts);
+            Map<UUID, String> names = voteStore.getLatestPlayerNames(counts.keySet());
+            voteCounter.load(counts);
+            voteLeaderboard.load(counts, names);
+            loadVoteWindows(names);
+            return "Vote counters rebuilt: " + voteCounter.getPlayerCount() + " players, " + mismatches + " mismatched, server total "
+                + serverVotes + " in memory vs " + voteCounter.getServerVotes() + " in database";
         }
-        return 0;
+    }
+
+    // Rebuild the day, week and month leaderboards in one pass over the last month of votes
+    private void loadVoteWindows(Map<UUID, String> names) {
+        long now = System.currentTimeMillis();
+        voteWindowLeaderboards.reset(names, now);
+        voteStore.forEachRecentVote(VotePeriod.MONTH.hours * 3600L, (uuid, playerName, serviceName, voteStamp, ageSeconds) ->
+            voteWindowLeaderboards.add(uuid, now - ageSeconds * 1000, now));
+    }
+
+    // Get player vote count
+    public int getPlayerVoteCount(PlayerEnv tgt_playerEnv) {
+        return voteCounter.getPlayerVotes(tgt_playerEnv.uuid);
     }
 
     // Get total server vote count  
     public int getServerVoteCount() {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + votesTable)) {
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
-                }
-            }
-        } catch (SQLException e) {
-            logger.severe("Failed to get total server vote count: " + e.getMessage());
+        return voteCounter.getServerVotes();
+    }
+
+    public VoteCounter getVoteCounter() {
+        return voteCounter;
+    }
+
+    public VoteLeaderboard getVoteLeaderboard() {
+        return voteLeaderboard;
+    }
+
+    // Leaderboard for a rolling period, or the all-time leaderboard
+    public VoteLeaderboard getVoteLeaderboard(VotePeriod period) {
+        if (period == VotePeriod.ALL_TIME) {
+            return voteLeaderboard;
         }
-        return 0;
+        return voteWindowLeaderboards.getLeaderboard(period, System.currentTimeMillis());
     }
 
-    // Get top voters
-    public List<Map.Entry<String, Integer>> getTopVoters(int limit) {
-        List<Map.Entry<String, Integer>> topVoters = new ArrayList<>();
-        String sql = "SELECT player_name, COUNT(*) as vote_count FROM " + votesTable + " GROUP BY player_name ORDER BY vote_count DESC LIMIT ?";
-
-        // adjust sql to join on players to get by uuid and latest name
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, limit);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                String player_name = rs.getString("player_name");
-                int voteCount = rs.getInt("vote_count");
-                topVoters.add(new AbstractMap.SimpleEntry<>(player_name, voteCount));
-            }
-        } catch (SQLException e) {
-            logger.severe("Error fetching top voters: " + e.getMessage());
+    // Player vote count within a period
+    public int getPlayerVoteCount(PlayerEnv tgt_playerEnv, VotePeriod period) {
+        if (period == VotePeriod.ALL_TIME) {
+            return voteCounter.getPlayerVotes(tgt_playerEnv.uuid);
         }
-        
-        return topVoters;
+        return voteWindowLeaderboards.getPlayerVotes(period, tgt_playerEnv.uuid, System.currentTimeMillis());
+    }
+
+    // Stream votes recorded within the last windowSeconds
+    public void forEachRecentVote(long windowSeconds, VoteStore.RecentVoteConsumer consumer) {
+        voteStore.forEachRecentVote(windowSeconds, consumer);
+    }
+
+    // Get top voters
+    public List<VoteLeaderboard.Entry> getTopVoters(int limit) {
+        return voteLeaderboard.getTop(limit);
+    }
+
+    // Get top voters for a period
+    public List<VoteLeaderboard.Entry> getTopVoters(VotePeriod period, int limit) {
+        return getVoteLeaderboard(period).getTop(limit);
     }
 
     // Get single player vote stats
-    public Map<String, Object> getPlayerVoteStats(PlayerEnv tgt_playerEnv) {
-        Map<String, Object> stats = new HashMap<>();
-        String sql = "SELECT COUNT(*) as total_votes, MAX(vote_ts) as last_vote FROM " + votesTable + " WHERE player_uuid = ?";
-        
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                stats.put("totalVotes", rs.getInt("total_votes"));
-                stats.put("lastVoteDate", rs.getTimestamp("last_vote"));
+    public PlayerVoteStats getPlayerVoteStats(PlayerEnv tgt_playerEnv) {
+        return new PlayerVoteStats(voteCounter.getPlayerVotes(tgt_playerEnv.uuid), voteStore.getLastVoteTime(tgt_playerEnv.uuid));
+    }
+
+    // Roll raw votes older than vote_history.rollup_after_days into daily totals, a chunk at a time;
+    // returns the number of votes rolled up
+    public long rollupVotes() {
+        if (rollupAfterDays <= 0) {
+            return 0;
+        }
+        long total = 0;
+        int rows;
+        do {
+            // runs unlocked: a chunk moves votes between tables without changing any total, and a
+            // recount reads both tables in one transaction
+            rows = voteStore.rollupVotes(rollupAfterDays, rollupChunkSize);
+            total += rows;
+        } while (rows == rollupChunkSize && pauseBetweenChunks());
+        return total;
+    }
+
+    // Clear old offline rewards and grants, maintenance.delete_chunk_size at a time; returns the number deleted
+    public long expireRewards(long cutoffTime) {
+        long total = 0;
+        int rows;
+        do {
+            rows = voteStore.expireRewards(cutoffTime, deleteChunkSize);
+            total += rows;
+        } while (rows > 0 && pauseBetweenChunks());
+        return total;
+    }
+
+    // Import vote history from another plugin (see VoteImporter), then reload the vote counters
+    public VoteImporter.Result importVotes(String type, String location, String table) throws ImportException {
+        if (!(voteStore instanceof JdbcVoteStore store)) {
+            throw new ImportException("Vote history can only be imported into sqlite or mysql");
+        }
+        if (!importRunning.compareAndSet(false, true)) {
+            throw new ImportException("An import is already running");
+        }
+        try {
+            // the indexes stay, live lookups and the rollup need them (VoteImportTool defers them)
+            VoteImporter importer = new VoteImporter(store, logger, config.getInt("import.batch_size", 10000),
+                false, this::pauseBetweenChunks);
+            VoteImporter.Result result = importer.run(ImportSource.key(type, location, table), ImportSource.create(type, location, table));
+            if (result.imported() > 0) {
+                logger.info(rebuildVoteCounts());
             }
-        } catch (SQLException e) {
-            logger.severe("Error fetching player vote stats: " + e.getMessage());
+            return result;
+        } finally {
+            importRunning.set(false);
         }
-        
-        return stats.isEmpty() ? null : stats;
-    }
-
-    // Clear old offline rewards
-    public void expireRewards(long cutoffTime) {
-        String sql = "DELETE FROM " + offlineRewardsTable + " WHERE reward_ts < ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setTimestamp(1, new Timestamp(cutoffTime));
-            int deletedRewards = pstmt.executeUpdate();
-            logger.info("Cleared " + deletedRewards + " old offline rewards.");
-        } catch (SQLException e) {
-            logger.severe("Error clearing old offline rewards: " + e.getMessage());
+    }
+
+    // Let queued votes through between chunks of a long job, false once the plugin is stopping
+    public boolean pauseBetweenChunks() {
+        try {
+            Thread.sleep(chunkPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
+        return plugin.isEnabled();
     }
 
     // Close database connection
     public void close() {
-        if (dataSource != null) {
-            dataSource.close();
+        if (voteBatchWriter != null) {
+            voteBatchWriter.shutdown();
+        }
+        if (voteStore != null) {
+            voteStore.close();
         }
     }
 
     // Add or update player in players table
     public void addOrUpdatePlayer(PlayerEnv tgt_playerEnv) {
-        String query;
-        if (isMySQL) {
-            query = "INSERT INTO " + playersTable + " (player_uuid, player_name, last_seen_ts) VALUES (?, ?, CURRENT_TIMESTAMP) "
-                  + "ON DUPLICATE KEY UPDATE player_name = ?, last_seen_ts = CURRENT_TIMESTAMP";
-        } else {
-            query = "INSERT OR REPLACE INTO " + playersTable + " (player_uuid, player_name, last_seen_ts) VALUES (?, ?, CURRENT_TIMESTAMP)";
-        }
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            pstmt.setString(2, tgt_playerEnv.name);
-            if (isMySQL) {
-                pstmt.setString(3, tgt_playerEnv.name);
-            }
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            logger.severe("Error adding/updating player: " + e.getMessage());
-        }
+        voteStore.addOrUpdatePlayer(tgt_playerEnv.uuid, tgt_playerEnv.name);
+        voteLeaderboard.setName(tgt_playerEnv.uuid, tgt_playerEnv.name);
+        voteWindowLeaderboards.setName(tgt_playerEnv.uuid, tgt_playerEnv.name);
     }
 
     // Get player UUID from players table
     public UUID getPlayerUUID(PlayerEnv tgt_playerEnv) {
-        String query = "SELECT player_uuid FROM " + playersTable + " WHERE player_name = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, tgt_playerEnv.name);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return UUID.fromString(rs.getString("player_uuid"));
-                }
-            }
-        } catch (SQLException e) {
-            logger.severe("Error getting player UUID: " + e.getMessage());
-        }
-        return null;
-    }
-
-    // Get all players UUID from players table
-    public List<UUID> getAllPlayersUUID() {
-        List<UUID> playersUUID = new ArrayList<>();
-        String query = "SELECT DISTINCT player_uuid FROM " + playersTable;
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    playersUUID.add(UUID.fromString(rs.getString("player_uuid")));
-                }
-                return playersUUID;
+        return getPlayerUUID(tgt_playerEnv.name);
+    }
+
+    // Get player UUID from players table by name
+    public UUID getPlayerUUID(String playerName) {
+        return voteStore.getPlayerUUID(playerName);
+    }
+
+    // Walk every player in the players table a page at a time, keyset paged so memory stays bounded
+    public void forEachPlayerPage(int pageSize, Consumer<List<UUID>> consumer) {
+        UUID after = null;
+        List<UUID> page;
+        do {
+            page = voteStore.getPlayersAfter(after, pageSize);
+            if (page == null || page.isEmpty()) {
+                return;
             }
-        } catch (SQLException e) {
-            logger.severe("Error getting all players UUID: " + e.getMessage());
-        }
-        return null;
+            consumer.accept(page);
+            after = page.get(page.size() - 1);
+        } while (page.size() == pageSize && plugin.isEnabled());
     }
 
     // Get player name from players table
     public String getPlayerUsername(PlayerEnv tgt_playerEnv) {
-        String query = "SELECT player_name FROM " + playersTable + " WHERE player_uuid = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("player_name");
-                }
-            }
-        } catch (SQLException e) {
-            logger.severe("Error getting player name: " + e.getMessage());
-        }
-        return null;
+        return voteStore.getPlayerName(tgt_playerEnv.uuid);
     }
 
     public void addOfflineReward(PlayerEnv tgt_playerEnv, String rewardId, String serviceName) {
-        String sql = "INSERT INTO " + offlineRewardsTable + " (player_uuid, reward_id, vote_service, reward_ts) VALUES (?, ?, ?, ?)";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            pstmt.setString(2, rewardId);
-            pstmt.setString(3, serviceName);
-            pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
-            pstmt.executeUpdate();
-            // logger.info("Added offline reward for " + tgt_playerEnv.uuid + " with reward ID " + rewardId + " from service " + serviceName);
-        } catch (SQLException e) {
-            logger.severe("Error adding offline reward: " + e.getMessage());
-        }
+        addOfflineReward(tgt_playerEnv.uuid, rewardId, serviceName);
     }
 
-    // Get offline rewards for player
-    public List<Map<String, Object>> getOfflineRewards(PlayerEnv tgt_playerEnv) {
-        List<Map<String, Object>> rewards = new ArrayList<>();
-        String sql = "SELECT * FROM " + offlineRewardsTable + " WHERE player_uuid = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    Map<String, Object> reward = new HashMap<>();
-                    reward.put("reward_id", rs.getString("reward_id"));
-                    reward.put("vote_service", rs.getString("vote_service"));
-                    reward.put("reward_ts", rs.getTimestamp("reward_ts"));
-                    rewards.add(reward);
-                }
-            }
-        } catch (SQLException e) {
-            logger.severe("Error getting offline rewards: " + e.getMessage());
-        }
-        return rewards;
+    public void addOfflineReward(UUID uuid, String rewardId, String serviceName) {
+        voteStore.addOfflineReward(uuid, rewardId, serviceName);
+    }
+
+    // Grant rewards to every known player, one grant row per reward however many players there are
+    public void addRewardGrants(List<String> rewardIds, String serviceName) {
+        voteStore.addRewardGrants(rewardIds, serviceName);
+    }
+
+    // Get offline rewards and unclaimed grants for player
+    public List<OfflineReward> getOfflineRewards(PlayerEnv tgt_playerEnv) {
+        return voteStore.getOfflineRewards(tgt_playerEnv.uuid);
     }
 
     // Remove specific offline reward for player
     public void removeOfflineReward(PlayerEnv tgt_playerEnv, String rewardId) {
-        String sql = "DELETE FROM " + offlineRewardsTable + " WHERE player_uuid = ? AND reward_id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, tgt_playerEnv.uuid.toString());
-            pstmt.setString(2, rewardId);
-            pstmt.executeUpdate();
-            logger.info("Removed offline reward for " + tgt_playerEnv.uuid + ", reward ID " + rewardId);
-        } catch (SQLException e) {
-            logger.severe("Error removing offline reward: " + e.getMessage());
-        }
+        voteStore.removeOfflineReward(tgt_playerEnv.uuid, rewardId);
+        logger.info("Removed offline reward for " + tgt_playerEnv.uuid + ", reward ID " + rewardId);
     }
 
-    // Get connection to database
-    private Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    // Mark every grant up to grantId as claimed by the player
+    public void claimRewardGrants(PlayerEnv tgt_playerEnv, long grantId) {
+        voteStore.claimRewardGrants(tgt_playerEnv.uuid, grantId);
     }
-}
\ No newline at end of file
+}
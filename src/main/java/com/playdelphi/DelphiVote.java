@@ -21,9 +21,10 @@ public class DelphiVote extends JavaPlugin implements Listener {
     private UtilsManager utilsManager;
     private PlayerEnvManager playerEnvManager;
     private YamlManager yamlManager;
+    private UUIDResolver uuidResolver;
+    private MaintenanceManager maintenanceManager;
 
-    private Object headDatabaseAPI;
-    private boolean headDatabaseEnabled = false;
+    private HeadDatabaseHook headDatabase;
 
 
     // Getters
@@ -33,12 +34,12 @@ public class DelphiVote extends JavaPlugin implements Listener {
     public RewardManager getRewardManager() {return rewardManager;}
     public VoteManager getVoteManager() {return voteManager;}
     public CommandManager getCommandManager() {return commandManager;}
-    public Object getHeadDatabaseAPI() {
-        return headDatabaseEnabled ? headDatabaseAPI : null;
-    }
+    public HeadDatabaseHook getHeadDatabase() {return headDatabase;}
     public UtilsManager getUtilsManager() {return utilsManager;}
     public PlayerEnvManager getPlayerEnvManager() {return playerEnvManager;}
     public YamlManager getYamlManager() {return yamlManager;}
+    public UUIDResolver getUUIDResolver() {return uuidResolver;}
+    public MaintenanceManager getMaintenanceManager() {return maintenanceManager;}
 
     @Override
     public void onEnable() {
@@ -61,6 +62,9 @@ public class DelphiVote extends JavaPlugin implements Listener {
         // Initialize DatabaseManager
         databaseManager = new DatabaseManager(this);
 
+        // Initialize UUIDResolver
+        uuidResolver = new UUIDResolver(this);
+
         // Initialize LanguageManager
         languageManager = new LanguageManager(this);
 
@@ -73,6 +77,9 @@ public class DelphiVote extends JavaPlugin implements Listener {
         // Initialize VoteManager
         voteManager = new VoteManager(this);
 
+        // Initialize MaintenanceManager
+        maintenanceManager = new MaintenanceManager(this);
+
         // Register Events
         getServer().getPluginManager().registerEvents(this, this);
 
@@ -84,6 +91,9 @@ public class DelphiVote extends JavaPlugin implements Listener {
         commandManager = new CommandManager(this);
         getCommand("vote").setExecutor(commandManager);
 
+        // Replay votes left in the journal by a crash or database outage
+        voteManager.replayJournal();
+
         // Complete plugin enable
         getLogger().info("DelphiVote plugin has been enabled!");
         startPeriodicTasks();
@@ -92,6 +102,19 @@ public class DelphiVote extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         getLogger().info("DelphiVote plugin is shutting down...");
+        if (voteManager != null) {
+            voteManager.shutdown();
+        }
+        if (rewardManager != null) {
+            rewardManager.getRewardDelivery().shutdown();
+            rewardManager.getRewardCommands().shutdown();
+        }
+        if (utilsManager != null) {
+            utilsManager.shutdown();
+        }
+        if (maintenanceManager != null) {
+            maintenanceManager.shutdown();
+        }
         if (databaseManager != null) {
             databaseManager.close();
         }
@@ -102,6 +125,7 @@ public class DelphiVote extends JavaPlugin implements Listener {
 
         // Init PlayerEnv
         PlayerEnv playerEnv = playerEnvManager.getPlayerEnv(event.getPlayer());
+        uuidResolver.playerOnline(event.getPlayer());
 
         // QA PlayerEnv
         //  if (playerEnv != null) {
@@ -124,36 +148,36 @@ public class DelphiVote extends JavaPlugin implements Listener {
         
         // Remove PlayerEnv
         playerEnvManager.removePlayerEnv(event.getPlayer().getUniqueId());
+        uuidResolver.playerOffline(event.getPlayer());
         // getLogger().info("Removed PlayerEnv for " + event.getPlayer().getName());
     }
     
     @EventHandler
     public void onVotifierEvent(VotifierEvent event) {
 
-        // Get or create PlayerEnv with voting player name
-        PlayerEnv playerEnv = playerEnvManager.getPlayerEnv(event.getVote().getUsername());
-
-        // send source player, target player, service name, trigger name
-        voteManager.handleVote(playerEnv, playerEnv, event.getVote().getServiceName());
+        // Queue vote with voting player name, the player is resolved off the main thread
+        voteManager.handleVote(null, event.getVote().getUsername(), event.getVote().getServiceName(), event.getVote().getTimeStamp());
     }
 
     private void startPeriodicTasks() {
-        // Expire old rewards daily
-        getServer().getScheduler().runTaskTimerAsynchronously(this, rewardManager::expireRewards, 12000L, 728000L); // wait 10 min after startup, run daily (in ticks)
+        // Hand out reward items and run reward commands a few per tick
+        rewardManager.getRewardDelivery().start();
+        rewardManager.getRewardCommands().start();
+
+        // Expire old rewards, fold old votes into daily totals and tidy the database on the maintenance schedules
+        maintenanceManager.start();
     }
 
     private void setupHeadDatabase() {
         try {
-            Class.forName("me.arcaniax.hdb.api.HeadDatabaseAPI");
+            Class<?> apiClass = Class.forName(HeadDatabaseHook.API_CLASS);
             if (getServer().getPluginManager().getPlugin("HeadDatabase") != null) {
-                Class<?> apiClass = Class.forName("me.arcaniax.hdb.api.HeadDatabaseAPI");
-                headDatabaseAPI = apiClass.getDeclaredConstructor().newInstance();
-                headDatabaseEnabled = true;
+                headDatabase = HeadDatabaseHook.bind(apiClass);
                 getLogger().info("HeadDatabase found and enabled!");
             }
         } catch (Exception e) {
             getLogger().info("HeadDatabase plugin not found");
-            headDatabaseEnabled = false;
+            headDatabase = null;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,494 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.StoreException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * FileVoteStore keeps votes in an append-only log file, for servers that don't want
+ * a database at all.
+ *
+ * Every change is appended to data/delphivote.log and forced to disk before it is
+ * applied to the MemoryVoteStore it extends. At startup the log is replayed to rebuild
+ * memory. A damaged or half written record ends the replay and the log is cut back to
+ * the last good record. When most of the log is superseded records (players logging in
+ * again, rewards handed out, grants claimed) it is rewritten with just the current state.
+ *
+ * Record layout:
+ *   int    payload length
+ *   byte   type, then the fields for that type
+ *   int    CRC32 of the payload
+ * A batch of votes is one record, so a crash keeps all of the batch or none of it.
+ */
+
+public class FileVoteStore extends MemoryVoteStore {
+    private static final byte VOTES = 1;            // int count, then per vote: uuid, long time, name, service (before vote keys)
+    private static final byte PLAYER = 2;           // uuid, long last seen, name
+    private static final byte REWARD = 3;           // uuid, long time, reward id, service
+    private static final byte REWARD_REMOVED = 4;   // uuid, reward id
+    private static final byte REWARDS_EXPIRED = 5;  // long cutoff
+    private static final byte GRANTS = 6;           // long time, service, int count, then per grant: long grant id, reward id
+    private static final byte GRANTS_CLAIMED = 7;   // uuid, long grant id
+    private static final byte KEYED_VOTES = 8;      // int count, then per vote: uuid, long time, long key, name, service (before vote stamps)
+    private static final byte STAMPED_VOTES = 9;    // int count, then per vote: uuid, long time, long key, long stamp, name, service
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int COMPACT_MIN_RECORDS = 10000;
+    private static final int COMPACT_VOTES_PER_RECORD = 1000;
+
+    private final Logger logger;
+    private final File logFile;
+    private FileChannel channel;
+    private int logRecords;
+
+    // Constructor
+    public FileVoteStore(DelphiVote plugin) {
+        this(plugin.getDataFolder(), plugin.getLogger());
+    }
+
+    // Constructor for tools that run without a server
+    public FileVoteStore(File pluginFolder, Logger logger) {
+        this.logger = logger;
+        File dataFolder = new File(pluginFolder, "data");
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        this.logFile = new File(dataFolder, "delphivote.log");
+        try {
+            replay();
+            if (logRecords > COMPACT_MIN_RECORDS && logRecords > getRecordCount() * 2) {
+                compact();
+            }
+            channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException | StoreException e) {
+            logger.severe("Error opening vote log " + logFile.getName() + ", nothing will be saved: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void insertVotes(List<VoteBatchWriter.QueuedVote> votes) throws StoreException {
+        long now = System.currentTimeMillis();
+        List<VoteBatchWriter.QueuedVote> newVotes = new ArrayList<>(votes.size());
+        for (VoteBatchWriter.QueuedVote vote : votes) {
+            if (isStored(vote)) {
+                vote.duplicate = true;
+            } else {
+                newVotes.add(vote);
+            }
+        }
+        if (newVotes.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * newVotes.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(STAMPED_VOTES);
+            out.writeInt(newVotes.size());
+            for (VoteBatchWriter.QueuedVote vote : newVotes) {
+                writeUuid(out, vote.tgt_playerEnv.uuid);
+                out.writeLong(now);
+                out.writeLong(vote.voteKey);
+                out.writeLong(vote.voteStamp);
+                out.writeUTF(vote.tgt_playerEnv.name);
+                out.writeUTF(vote.serviceName);
+            }
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new StoreException("Error writing votes to " + logFile.getName() + ": " + e.getMessage(), e);
+        }
+        for (VoteBatchWriter.QueuedVote vote : newVotes) {
+            recordVote(vote.tgt_playerEnv.uuid, vote.tgt_playerEnv.name, vote.serviceName, now, vote.voteKey, vote.voteStamp);
+        }
+    }
+
+    @Override
+    public synchronized void addOrUpdatePlayer(UUID uuid, String playerName) {
+        long now = System.currentTimeMillis();
+        try {
+            append(playerRecord(uuid, playerName, now));
+        } catch (IOException e) {
+            logger.severe("Error adding/updating player: " + e.getMessage());
+        }
+        recordPlayer(uuid, playerName, now);
+    }
+
+    @Override
+    public synchronized void addOfflineReward(UUID uuid, String rewardId, String serviceName) {
+        long now = System.currentTimeMillis();
+        try {
+            append(rewardRecord(uuid, rewardId, serviceName, now));
+        } catch (IOException e) {
+            logger.severe("Error adding offline reward: " + e.getMessage());
+        }
+        recordReward(uuid, rewardId, serviceName, now);
+    }
+
+    // All the grants of one trigger are one record
+    @Override
+    public synchronized void addRewardGrants(List<String> rewardIds, String serviceName) {
+        long now = System.currentTimeMillis();
+        long firstId = getLastGrantId() + 1;
+        try {
+            append(grantsRecord(firstId, rewardIds, serviceName, now));
+        } catch (IOException e) {
+            logger.severe("Error adding reward grants: " + e.getMessage());
+        }
+        for (int i = 0; i < rewardIds.size(); i++) {
+            recordGrant(firstId + i, rewardIds.get(i), serviceName, now);
+        }
+    }
+
+    @Override
+    public synchronized void removeOfflineReward(UUID uuid, String rewardId) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REWARD_REMOVED);
+            writeUuid(out, uuid);
+            out.writeUTF(rewardId);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            logger.severe("Error removing offline reward: " + e.getMessage());
+        }
+        deleteReward(uuid, rewardId);
+    }
+
+    @Override
+    public synchronized void claimRewardGrants(UUID uuid, long grantId) {
+        try {
+            append(claimRecord(uuid, grantId));
+        } catch (IOException e) {
+            logger.severe("Error claiming reward grants: " + e.getMessage());
+        }
+        claimGrants(uuid, grantId);
+    }
+
+    @Override
+    public synchronized int expireRewards(long cutoffTime, int limit) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REWARDS_EXPIRED);
+            out.writeLong(cutoffTime);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            logger.severe("Error clearing old offline rewards: " + e.getMessage());
+        }
+        return deleteRewardsBefore(cutoffTime);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Error closing vote log: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    // Write one framed record and force it to disk
+    private void append(byte[] payload) throws IOException {
+        if (channel == null) {
+            throw new IOException("vote log is not open");
+        }
+        ByteBuffer buffer = frame(payload);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        logRecords++;
+    }
+
+    // Rebuild memory from the log, cutting off a damaged tail
+    private void replay() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long goodLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int crc;
+                try {
+                    in.readFully(payload);
+                    crc = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc != crc(payload)) {
+                    break;
+                }
+                apply(payload);
+                goodLength += 4 + length + 4;
+                logRecords++;
+            }
+        }
+
+        if (goodLength < logFile.length()) {
+            logger.warning("Vote log " + logFile.getName() + " has a damaged record at " + goodLength + ", dropping the last " + (logFile.length() - goodLength) + " bytes");
+            try (FileChannel truncate = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(goodLength);
+            }
+        }
+        logger.info("Replayed " + logRecords + " vote log records (" + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case VOTES -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID uuid = readUuid(in);
+                    long time = in.readLong();
+                    recordVote(uuid, in.readUTF(), in.readUTF(), time, 0, 0);
+                }
+            }
+            case KEYED_VOTES -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID uuid = readUuid(in);
+                    long time = in.readLong();
+                    long key = in.readLong();
+                    recordVote(uuid, in.readUTF(), in.readUTF(), time, key, 0);
+                }
+            }
+            case STAMPED_VOTES -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID uuid = readUuid(in);
+                    long time = in.readLong();
+                    long key = in.readLong();
+                    long stamp = in.readLong();
+                    recordVote(uuid, in.readUTF(), in.readUTF(), time, key, stamp);
+                }
+            }
+            case PLAYER -> {
+                UUID uuid = readUuid(in);
+                long lastSeen = in.readLong();
+                recordPlayer(uuid, in.readUTF(), lastSeen);
+            }
+            case REWARD -> {
+                UUID uuid = readUuid(in);
+                long time = in.readLong();
+                recordReward(uuid, in.readUTF(), in.readUTF(), time);
+            }
+            case GRANTS -> {
+                long time = in.readLong();
+                String serviceName = in.readUTF();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long grantId = in.readLong();
+                    recordGrant(grantId, in.readUTF(), serviceName, time);
+                }
+            }
+            case GRANTS_CLAIMED -> claimGrants(readUuid(in), in.readLong());
+            case REWARD_REMOVED -> deleteReward(readUuid(in), in.readUTF());
+            case REWARDS_EXPIRED -> deleteRewardsBefore(in.readLong());
+            default -> throw new IOException("unknown vote log record type " + type);
+        }
+    }
+
+    // Rewrite the log with only the current state, replacing the old one in a single rename
+    private void compact() throws IOException, StoreException {
+        long start = System.currentTimeMillis();
+        int before = logRecords;
+        File tempFile = new File(logFile.getParentFile(), logFile.getName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CompactWriter writer = new CompactWriter(out);
+            forEachRecord(writer);
+            writer.flushVotes();
+            out.force(true);
+            logRecords = writer.records;
+        }
+        Files.move(tempFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compacted vote log from " + before + " to " + logRecords + " records (" + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    // Writes the current state as records, grouping votes
+    private static class CompactWriter implements RecordVisitor {
+        final FileChannel out;
+        final List<byte[]> votes = new ArrayList<>();
+        int records;
+
+        CompactWriter(FileChannel out) {
+            this.out = out;
+        }
+
+        @Override
+        public void vote(UUID uuid, String playerName, String serviceName, long voteTime, long voteKey, long voteStamp) throws StoreException {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+                DataOutputStream data = new DataOutputStream(bytes);
+                writeUuid(data, uuid);
+                data.writeLong(voteTime);
+                data.writeLong(voteKey);
+                data.writeLong(voteStamp);
+                data.writeUTF(playerName);
+                data.writeUTF(serviceName);
+                votes.add(bytes.toByteArray());
+                if (votes.size() == COMPACT_VOTES_PER_RECORD) {
+                    flushVotes();
+                }
+            } catch (IOException e) {
+                throw new StoreException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void player(UUID uuid, String playerName, long lastSeen) throws StoreException {
+            write(playerRecord(uuid, playerName, lastSeen));
+        }
+
+        @Override
+        public void reward(UUID uuid, String rewardId, String serviceName, long rewardTime) throws StoreException {
+            write(rewardRecord(uuid, rewardId, serviceName, rewardTime));
+        }
+
+        @Override
+        public void grant(long grantId, String rewardId, String serviceName, long grantTime) throws StoreException {
+            write(grantsRecord(grantId, List.of(rewardId), serviceName, grantTime));
+        }
+
+        @Override
+        public void claim(UUID uuid, long grantId) throws StoreException {
+            write(claimRecord(uuid, grantId));
+        }
+
+        void flushVotes() throws StoreException {
+            if (votes.isEmpty()) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * votes.size());
+            bytes.write(STAMPED_VOTES);
+            bytes.writeBytes(ByteBuffer.allocate(4).putInt(votes.size()).array());
+            votes.forEach(bytes::writeBytes);
+            votes.clear();
+            write(bytes.toByteArray());
+        }
+
+        private void write(byte[] payload) throws StoreException {
+            try {
+                ByteBuffer buffer = frame(payload);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                records++;
+            } catch (IOException e) {
+                throw new StoreException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static byte[] playerRecord(UUID uuid, String playerName, long lastSeen) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PLAYER);
+            writeUuid(out, uuid);
+            out.writeLong(lastSeen);
+            out.writeUTF(playerName);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+    }
+
+    private static byte[] rewardRecord(UUID uuid, String rewardId, String serviceName, long rewardTime) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REWARD);
+            writeUuid(out, uuid);
+            out.writeLong(rewardTime);
+            out.writeUTF(rewardId);
+            out.writeUTF(serviceName);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+    }
+
+    // Grants with consecutive ids from firstId
+    private static byte[] grantsRecord(long firstId, List<String> rewardIds, String serviceName, long grantTime) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(GRANTS);
+            out.writeLong(grantTime);
+            out.writeUTF(serviceName);
+            out.writeInt(rewardIds.size());
+            for (int i = 0; i < rewardIds.size(); i++) {
+                out.writeLong(firstId + i);
+                out.writeUTF(rewardIds.get(i));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+    }
+
+    private static byte[] claimRecord(UUID uuid, long grantId) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(GRANTS_CLAIMED);
+            writeUuid(out, uuid);
+            out.writeLong(grantId);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length + 4);
+        buffer.putInt(payload.length).put(payload).putInt(crc(payload));
+        return buffer.flip();
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
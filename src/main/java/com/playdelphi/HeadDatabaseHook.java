@@ -0,0 +1,89 @@
+package com.playdelphi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * HeadDatabaseHook gives reward items their heads from the Head Database plugin, which
+ * DelphiVote doesn't compile against.
+ *
+ * HeadDatabaseAPI.getItemHead is looked up once, when the plugin enables, and bound to an
+ * API instance as a MethodHandle. Heads it returns are kept in a small LRU cache by head
+ * ID, filled for every hdb- item in reward_items.yml when the rewards load, and handed
+ * out as clones. Head Database loads its heads after the server starts, so a head it
+ * can't find yet isn't cached and is asked for again at the next grant.
+ */
+
+public class HeadDatabaseHook {
+    public static final String API_CLASS = "me.arcaniax.hdb.api.HeadDatabaseAPI";
+    private static final int CACHE_SIZE = 1024;
+
+    private final MethodHandle getItemHead;
+    private final Map<String, ItemStack> heads = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ItemStack> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private HeadDatabaseHook(MethodHandle getItemHead) {
+        this.getItemHead = getItemHead;
+    }
+
+    // Bind to an API class with a public no-argument constructor and getItemHead(String)
+    public static HeadDatabaseHook bind(Class<?> apiClass) throws ReflectiveOperationException {
+        Object api = apiClass.getDeclaredConstructor().newInstance();
+        MethodHandle handle = MethodHandles.publicLookup()
+            .findVirtual(apiClass, "getItemHead", MethodType.methodType(ItemStack.class, String.class))
+            .bindTo(api);
+        return new HeadDatabaseHook(handle);
+    }
+
+    // A copy of the head, null if Head Database doesn't have it (yet)
+    public ItemStack getHead(String headId) {
+        ItemStack head;
+        synchronized (heads) {
+            head = heads.get(headId);
+        }
+        if (head == null) {
+            head = invokeGetItemHead(headId);
+            if (head == null) {
+                return null;
+            }
+            synchronized (heads) {
+                heads.put(headId, head.clone());
+            }
+        }
+        return head.clone();
+    }
+
+    private ItemStack invokeGetItemHead(String headId) {
+        try {
+            return (ItemStack) getItemHead.invokeExact(headId);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Look up heads ahead of their first grant, returns the number found
+    public int prewarm(Collection<String> headIds) {
+        int found = 0;
+        for (String headId : headIds) {
+            try {
+                if (getHead(headId) != null) {
+                    found++;
+                }
+            } catch (RuntimeException e) {
+                // not loaded yet, tried again when it's given
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,69 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.ImportException;
+
+/**
+ * ImportSource reads vote history from another plugin for VoteImporter.
+ *
+ * Sources give their votes in a fixed order and report a position after each one. The
+ * position is saved with every batch the importer commits, so an interrupted import
+ * opens the source again at that position and carries on where it stopped.
+ *
+ *   votingplugin  vote totals from VotingPlugin's Users table, SQLite file or MySQL
+ *   superbvote    vote totals from SuperbVote's votes table (MySQL) or its votes.json
+ *   csv           a CSV file with a header row, one vote or one vote total per line
+ *
+ * A location starting with jdbc: is a database URL, anything else is a file.
+ */
+
+public interface ImportSource extends AutoCloseable {
+
+    // Pick the source for a type and location, table overrides the plugin's default table name
+    static ImportSource create(String type, String location, String table) throws ImportException {
+        switch (type.toLowerCase()) {
+            case "votingplugin":
+                return SqlImportSource.votingPlugin(location, table);
+            case "superbvote":
+                if (location.toLowerCase().endsWith(".json")) {
+                    return new JsonImportSource(location, "SuperbVote");
+                }
+                return SqlImportSource.superbVote(location, table);
+            case "csv":
+                return new CsvImportSource(location);
+            default:
+                throw new ImportException("Unknown import source '" + type + "', expected votingplugin, superbvote or csv");
+        }
+    }
+
+    // Name the import's checkpoint is kept under, the location without any credentials
+    static String key(String type, String location, String table) {
+        String where = location;
+        if (where.startsWith("jdbc:")) {
+            int query = where.indexOf('?');
+            if (query >= 0) {
+                where = where.substring(0, query);
+            }
+            where = where.replaceFirst("//[^/@]*@", "//");
+        }
+        String key = type.toLowerCase() + ":" + where + (table == null ? "" : ":" + table);
+        return key.length() > 255 ? key.substring(key.length() - 255) : key;
+    }
+
+    // True if the votes are single votes for the votes table rather than totals
+    boolean singleVotes();
+
+    // Start reading after position, or from the beginning when it's null
+    void open(String position) throws ImportException;
+
+    // Next vote, null at the end; rows that can't be read are counted in skipped() and passed over
+    ImportedVote next() throws ImportException;
+
+    // Position just after the last vote returned
+    String position();
+
+    // Rows passed over so far because they had no valid UUID or vote count
+    long skipped();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,8 @@
+package com.playdelphi;
+
+import java.util.UUID;
+
+// A vote read from another plugin's history: one vote at voteTime, or when total is set the
+// player's vote total with voteTime their last vote (0 if the source doesn't record it)
+public record ImportedVote(UUID uuid, String playerName, String serviceName, long voteTime, int votes, boolean total) {
+}
@@ -0,0 +1,202 @@
+package com.playdelphi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JdbcStatements holds the SQL JdbcVoteStore runs for every vote and every player join,
+ * built once per table prefix, and keeps each statement prepared on the connections that
+ * have run it.
+ *
+ * The SQL for a query depends on which migrations have been applied (reward grants, vote
+ * keys, vote stamps), so every query is built up front for each combination of those features and picked by a features mask at run time. Prepared statements are kept
+ * per driver connection behind the pool: a connection the pool hands out again reuses what
+ * it already compiled instead of parsing and planning the SQL on every call. Callers must
+ * not close them, only the ResultSets they open. Bulk and maintenance queries that run a
+ * few times an hour are prepared as they go and aren't kept here.
+ */
+
+public class JdbcStatements {
+    public static final int GRANTS = 1;
+    public static final int VOTE_KEYS = 2;
+    public static final int VOTE_STAMPS = 4;
+    private static final int VARIANTS = 8;
+
+    public enum Query {
+        INSERT_VOTE,
+        VOTE_KEY_EXISTS,
+        LAST_VOTE,
+        LAST_SUMMARY_VOTE,
+        UPSERT_PLAYER,
+        PLAYER_UUID,
+        PLAYER_NAME,
+        ADD_OFFLINE_REWARD,
+        OFFLINE_REWARDS,
+        REMOVE_OFFLINE_REWARD,
+        CLAIM_GRANTS
+    }
+
+    private final String[] sql;
+    private final Map<Connection, PreparedStatement[]> prepared = new ConcurrentHashMap<>();
+
+    // Build every query for the tables with this prefix
+    public JdbcStatements(String tablePrefix, boolean isMySQL) {
+        Query[] queries = Query.values();
+        sql = new String[queries.length * VARIANTS];
+        for (Query query : queries) {
+            for (int features = 0; features < VARIANTS; features++) {
+                sql[query.ordinal() * VARIANTS + features] = build(query, features, tablePrefix, isMySQL);
+            }
+        }
+    }
+
+    // SQL for a query with the given features
+    public String sql(Query query, int features) {
+        return sql[query.ordinal() * VARIANTS + features];
+    }
+
+    // The query prepared on this connection, prepared now if the connection hasn't run it yet
+    public PreparedStatement prepare(Connection conn, Query query, int features) throws SQLException {
+        // key on the driver's connection, the pool wraps it in a new proxy every time it's borrowed
+        Connection driverConn = conn.unwrap(Connection.class);
+        PreparedStatement[] statements = prepared.get(driverConn);
+        if (statements == null) {
+            removeClosed();
+            statements = new PreparedStatement[sql.length];
+            prepared.put(driverConn, statements);
+        }
+        int slot = query.ordinal() * VARIANTS + features;
+        PreparedStatement pstmt = statements[slot];
+        if (pstmt == null || pstmt.isClosed()) {
+            pstmt = driverConn.prepareStatement(sql[slot]);
+            statements[slot] = pstmt;
+        }
+        return pstmt;
+    }
+
+    // Drop the statements of a connection after an error, they're prepared again on next use
+    public void discard(Connection conn) {
+        try {
+            closeAll(prepared.remove(conn.unwrap(Connection.class)));
+        } catch (SQLException e) {
+            // not a pooled connection we know, nothing kept for it
+        }
+    }
+
+    // Number of connections with statements kept
+    public int size() {
+        return prepared.size();
+    }
+
+    // Close every kept statement, before the pools are closed
+    public void close() {
+        for (PreparedStatement[] statements : prepared.values()) {
+            closeAll(statements);
+        }
+        prepared.clear();
+    }
+
+    // Forget connections the pool has retired, only checked when a new one shows up
+    private void removeClosed() {
+        Iterator<Map.Entry<Connection, PreparedStatement[]>> entries = prepared.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Connection, PreparedStatement[]> entry = entries.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    entries.remove();
+                }
+            } catch (SQLException e) {
+                entries.remove();
+            }
+        }
+    }
+
+    private static void closeAll(PreparedStatement[] statements) {
+        if (statements == null) {
+            return;
+        }
+        for (PreparedStatement pstmt : statements) {
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (SQLException e) {
+                    // the connection is gone already
+                }
+            }
+        }
+    }
+
+    private static String build(Query query, int features, String tablePrefix, boolean isMySQL) {
+        String votesTable = tablePrefix + "_votes";
+        String playersTable = tablePrefix + "_players";
+        String offlineRewardsTable = tablePrefix + "_offline_rewards";
+        String voteSummaryTable = tablePrefix + "_vote_summary";
+        String rewardGrantsTable = tablePrefix + "_reward_grants";
+        boolean grants = (features & GRANTS) != 0;
+        boolean voteKeys = (features & VOTE_KEYS) != 0;
+        boolean voteStamps = (features & VOTE_STAMPS) != 0;
+
+        switch (query) {
+            case INSERT_VOTE: {
+                String columns = "player_uuid, player_name, vote_service, vote_ts";
+                String values = "?, ?, ?, CURRENT_TIMESTAMP";
+                if (voteKeys) {
+                    columns += ", vote_key";
+                    values += ", ?";
+                }
+                if (voteStamps) {
+                    columns += ", vote_stamp";
+                    values += ", ?";
+                }
+                return "INSERT INTO " + votesTable + " (" + columns + ") VALUES (" + values + ")";
+            }
+            case VOTE_KEY_EXISTS:
+                return "SELECT 1 FROM " + votesTable + " WHERE vote_key = ?";
+            case LAST_VOTE:
+                return "SELECT MAX(vote_ts) AS last_vote FROM " + votesTable + " WHERE player_uuid = ?";
+            case LAST_SUMMARY_VOTE:
+                return "SELECT MAX(last_vote_ts) AS last_vote FROM " + voteSummaryTable + " WHERE player_uuid = ?";
+            case UPSERT_PLAYER: {
+                String columns = "player_uuid, player_name, last_seen_ts";
+                String values = "?, ?, CURRENT_TIMESTAMP";
+                if (grants) {
+                    columns += ", last_grant_id";
+                    values += ", (SELECT COALESCE(MAX(grant_id), 0) FROM " + rewardGrantsTable + ")";
+                }
+                if (isMySQL) {
+                    return "INSERT INTO " + playersTable + " (" + columns + ") VALUES (" + values + ") "
+                        + "ON DUPLICATE KEY UPDATE player_name = ?, last_seen_ts = CURRENT_TIMESTAMP";
+                }
+                return "INSERT INTO " + playersTable + " (" + columns + ") VALUES (" + values + ") "
+                    + "ON CONFLICT (player_uuid) DO UPDATE SET player_name = excluded.player_name, last_seen_ts = excluded.last_seen_ts";
+            }
+            case PLAYER_UUID:
+                // names are unique regardless of case, MySQL's default collation already ignores it;
+                // an old name a player has since dropped can linger, so the latest seen wins
+                return "SELECT player_uuid FROM " + playersTable + " WHERE player_name = ?" + (isMySQL ? "" : " COLLATE NOCASE")
+                    + " ORDER BY last_seen_ts DESC LIMIT 1";
+            case PLAYER_NAME:
+                return "SELECT player_name FROM " + playersTable + " WHERE player_uuid = ?";
+            case ADD_OFFLINE_REWARD:
+                return "INSERT INTO " + offlineRewardsTable + " (player_uuid, reward_id, vote_service, reward_ts) VALUES (?, ?, ?, ?)";
+            case OFFLINE_REWARDS: {
+                String sql = "SELECT reward_id, vote_service, reward_ts, 0 AS grant_id FROM " + offlineRewardsTable + " WHERE player_uuid = ?";
+                if (grants) {
+                    sql += " UNION ALL SELECT g.reward_id, g.vote_service, g.grant_ts, g.grant_id FROM " + rewardGrantsTable + " g JOIN " + playersTable
+                        + " p ON g.grant_id > p.last_grant_id WHERE p.player_uuid = ? ORDER BY grant_id";
+                }
+                return sql;
+            }
+            case REMOVE_OFFLINE_REWARD:
+                return "DELETE FROM " + offlineRewardsTable + " WHERE player_uuid = ? AND reward_id = ?";
+            case CLAIM_GRANTS:
+                return "UPDATE " + playersTable + " SET last_grant_id = ? WHERE player_uuid = ? AND last_grant_id < ?";
+            default:
+                throw new IllegalArgumentException("Unknown query " + query);
+        }
+    }
+}
@@ -0,0 +1,1166 @@
+package com.playdelphi;
+
+import com.playdelphi.JdbcStatements.Query;
+import com.playdelphi.exceptions.StoreException;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * JdbcVoteStore keeps votes in SQLite or MySQL, using the tables and migrations
+ * defined in database.yml.
+ */
+
+public class JdbcVoteStore implements VoteStore {
+    private static final DateTimeFormatter SQLITE_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+    private static final int SQLITE_BUSY = 5;
+    private static final long BUSY_RETRY_MS = 1000;
+
+    private final FileConfiguration config;
+    private final FileConfiguration databaseConfig;
+    private final File datafolder;
+    private final Logger logger;
+    private final boolean isMySQL;
+    private HikariDataSource dataSource;      // all writes (the only connection on SQLite)
+    private HikariDataSource readDataSource;  // reads, the same pool as dataSource on MySQL
+    private String tablePrefix;
+    private String votesTable;
+    private String playersTable;
+    private String offlineRewardsTable;
+    private String voteSummaryTable;
+    private String rewardGrantsTable;
+    private String importsTable;
+    private SchemaMigrator schemaMigrator;
+    private JdbcStatements statements;
+
+    // Reads a result from a kept statement
+    private interface StatementWork<T> {
+        T run(PreparedStatement pstmt) throws SQLException;
+    }
+
+    // Constructor
+    public JdbcVoteStore(DelphiVote plugin, boolean isMySQL) {
+        this(plugin.getConfig(), plugin.getConfigManager().getResourceConfig("database.yml"), plugin.getDataFolder(), plugin.getLogger(), isMySQL);
+    }
+
+    // Constructor for tools that run without a server, see VoteImportTool
+    public JdbcVoteStore(FileConfiguration config, FileConfiguration databaseConfig, File datafolder, Logger logger, boolean isMySQL) {
+        this.config = config;
+        this.databaseConfig = databaseConfig;
+        this.datafolder = datafolder;
+        this.logger = logger;
+        this.isMySQL = isMySQL;
+        initializeDatabase();
+        createTables();
+        this.schemaMigrator = new SchemaMigrator(logger, dataSource, isMySQL, tablePrefix, config.getInt("database.migration_batch_size", 5000));
+        schemaMigrator.migrate(databaseConfig);
+
+        // an import stopped while the votes table's indexes were dropped
+        if (schemaMigrator.isProvided("vote_imports")) {
+            restoreVoteIndexes();
+        }
+    }
+
+    // Initialize database
+    private void initializeDatabase() {
+        tablePrefix = config.getString("database.table_prefix");
+        votesTable = tablePrefix + "_votes";
+        playersTable = tablePrefix + "_players";
+        offlineRewardsTable = tablePrefix + "_offline_rewards";
+        voteSummaryTable = tablePrefix + "_vote_summary";
+        rewardGrantsTable = tablePrefix + "_reward_grants";
+        importsTable = tablePrefix + "_imports";
+        statements = new JdbcStatements(tablePrefix, isMySQL);
+
+        // Create data subfolder if it doesn't exist
+        File databaseFolder = new File(datafolder, "data");
+        if (!databaseFolder.exists()) {
+            databaseFolder.mkdirs();
+        }
+
+        if (isMySQL) {
+            HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getString("database.host") + ":" + config.getInt("database.port") + "/" + config.getString("database.database"));
+            hikariConfig.setUsername(config.getString("database.username"));
+            hikariConfig.setPassword(config.getString("database.password"));
+            hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+            hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+            hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+            hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+            hikariConfig.setMaximumPoolSize(10);
+
+            dataSource = new HikariDataSource(hikariConfig);
+            readDataSource = dataSource;
+        } else {
+            prepareSqliteFile();
+
+            // SQLite allows one writer at a time, so writes share a single connection
+            // and reads get their own small pool, which WAL lets run alongside the writer
+            dataSource = new HikariDataSource(sqliteConfig("DelphiVote-sqlite-writer", 1));
+            readDataSource = new HikariDataSource(sqliteConfig("DelphiVote-sqlite-reader", Math.max(1, config.getInt("database.sqlite_read_connections", 4))));
+        }
+    }
+
+    // A new SQLite file gets incremental auto vacuum, which has to be set before WAL is turned on
+    private void prepareSqliteFile() {
+        File databaseFile = new File(datafolder, "data/delphivote.db");
+        if (databaseFile.exists()) {
+            return;
+        }
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("PRAGMA journal_mode = WAL");
+        } catch (SQLException e) {
+            logger.severe("Error creating SQLite database: " + e.getMessage());
+        }
+    }
+
+    // SQLite pool settings: WAL journal, NORMAL sync (safe in WAL mode), tunable page cache and mmap
+    private HikariConfig sqliteConfig(String poolName, int poolSize) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setJdbcUrl("jdbc:sqlite:" + datafolder.getAbsolutePath() + "/data/delphivote.db");
+        hikariConfig.setDriverClassName("org.sqlite.JDBC");
+        hikariConfig.addDataSourceProperty("journal_mode", "WAL");
+        hikariConfig.addDataSourceProperty("synchronous", "NORMAL");
+        hikariConfig.addDataSourceProperty("busy_timeout", "5000");
+        hikariConfig.addDataSourceProperty("cache_size", String.valueOf(-config.getInt("database.sqlite_cache_kb", 16384))); // negative is KiB
+        hikariConfig.addDataSourceProperty("mmap_size", String.valueOf(config.getLong("database.sqlite_mmap_mb", 64) * 1024 * 1024));
+        hikariConfig.setMaximumPoolSize(poolSize);
+        hikariConfig.setMinimumIdle(1);
+        return hikariConfig;
+    }
+
+    // Create tables
+    private void createTables() {
+        // YamlConfiguration databaseConfig = YamlConfiguration.loadConfiguration(new InputStreamReader(plugin.getResource("database.yml"), StandardCharsets.UTF_8));
+        ConfigurationSection tablesSection = databaseConfig.getConfigurationSection("tables");
+
+        if (tablesSection == null) {
+            logger.severe("No table definitions found in database.yml");
+            return;
+        }
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            for (String tableName : tablesSection.getKeys(false)) {
+                ConfigurationSection tableSection = tablesSection.getConfigurationSection(tableName);
+                if (tableSection == null) continue;
+
+                StringBuilder createTableSQL = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tablePrefix + "_" + tableName + " (");
+
+                for (String fieldName : tableSection.getKeys(false)) {
+                    ConfigurationSection fieldSection = tableSection.getConfigurationSection(fieldName);
+                    String fieldDef;
+
+                    if (fieldSection != null) {
+                        // Field has separate SQLite and MySQL definitions
+                        fieldDef = isMySQL ? fieldSection.getString("mysql") : fieldSection.getString("sqlite");
+                    } else {
+                        // Field has a single definition for both database types
+                        fieldDef = tableSection.getString(fieldName);
+                    }
+
+                    if (fieldDef == null) continue;
+
+                    createTableSQL.append(fieldName).append(" ").append(fieldDef).append(", ");
+                }
+
+                createTableSQL.setLength(createTableSQL.length() - 2);  // Remove last comma and space
+                createTableSQL.append(")");
+
+                stmt.execute(createTableSQL.toString());
+                // logger.info("Created table: " + tablePrefix + "_" + tableName);
+            }
+        } catch (SQLException e) {
+            logger.severe("Error creating tables: " + e.getMessage());
+        }
+    }
+
+    public SchemaMigrator getSchemaMigrator() {
+        return schemaMigrator;
+    }
+
+    public boolean isMySQL() {
+        return isMySQL;
+    }
+
+    @Override
+    public boolean isMigrating() {
+        return schemaMigrator.isPending();
+    }
+
+    // Write a batch of votes in one transaction, replayed votes are looked up by key first. On SQLite
+    // a background migration can hold the database longer than the writer's busy_timeout (an index
+    // build on a large votes table), so while one runs a busy batch waits and is tried again; the
+    // votes queue behind it and new ones wait in the vote journal.
+    @Override
+    public void insertVotes(List<VoteBatchWriter.QueuedVote> votes) throws StoreException {
+        boolean waiting = false;
+        while (true) {
+            try {
+                writeVotes(votes);
+                if (waiting) {
+                    logger.info("Vote writer resumed after waiting for a database migration");
+                }
+                return;
+            } catch (SQLException e) {
+                if (isMySQL || (e.getErrorCode() & 0xff) != SQLITE_BUSY || !schemaMigrator.isPending()) {
+                    throw new StoreException(e.getMessage(), e);
+                }
+                if (!waiting) {
+                    logger.info("Vote writer waiting for a database migration to finish, votes are queued until then");
+                    waiting = true;
+                }
+            }
+            try {
+                Thread.sleep(BUSY_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted waiting for a database migration", e);
+            }
+        }
+    }
+
+    private void writeVotes(List<VoteBatchWriter.QueuedVote> votes) throws SQLException {
+        int features = features();
+        boolean voteKeys = (features & JdbcStatements.VOTE_KEYS) != 0;
+        boolean voteStamps = (features & JdbcStatements.VOTE_STAMPS) != 0;
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = statements.prepare(conn, Query.INSERT_VOTE, features);
+                for (VoteBatchWriter.QueuedVote vote : votes) {
+                    vote.duplicate = voteKeys && vote.replayed && vote.voteKey != 0 && isStored(conn, vote.voteKey, features);
+                    if (vote.duplicate) {
+                        continue;
+                    }
+                    int index = 1;
+                    pstmt.setString(index++, vote.tgt_playerEnv.uuid.toString());
+                    pstmt.setString(index++, vote.tgt_playerEnv.name);
+                    pstmt.setString(index++, vote.serviceName);
+                    if (voteKeys) {
+                        setLongOrNull(pstmt, index++, vote.voteKey);
+                    }
+                    if (voteStamps) {
+                        setLongOrNull(pstmt, index, vote.voteStamp);
+                    }
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                // closing the statement drops whatever is left of the batch
+                statements.discard(conn);
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Bind a key or stamp, 0 stands for none
+    private static void setLongOrNull(PreparedStatement pstmt, int index, long value) throws SQLException {
+        if (value != 0) {
+            pstmt.setLong(index, value);
+        } else {
+            pstmt.setNull(index, Types.BIGINT);
+        }
+    }
+
+    // True if a vote with this key is in the votes table
+    private boolean isStored(Connection conn, long voteKey, int features) throws SQLException {
+        PreparedStatement pstmt = statements.prepare(conn, Query.VOTE_KEY_EXISTS, features);
+        pstmt.setLong(1, voteKey);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    // Count votes per player in one pass, raw votes plus rolled up daily totals; both tables are
+    // read in one transaction, so a rollup chunk committing in between isn't counted twice
+    @Override
+    public Map<UUID, Integer> countVotesByPlayer() {
+        Map<UUID, Integer> counts = new HashMap<>();
+        String sql = "SELECT player_uuid, COUNT(*) AS vote_count FROM " + votesTable + " GROUP BY player_uuid";
+        String summarySql = "SELECT player_uuid, SUM(vote_count) AS vote_count FROM " + voteSummaryTable + " GROUP BY player_uuid";
+        try (Connection conn = readDataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                     ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        counts.put(UUID.fromString(rs.getString("player_uuid")), rs.getInt("vote_count"));
+                    }
+                }
+                if (schemaMigrator.isProvided("vote_summary")) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(summarySql);
+                         ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            counts.merge(UUID.fromString(rs.getString("player_uuid")), rs.getInt("vote_count"), Integer::sum);
+                        }
+                    }
+                }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return counts;
+        } catch (SQLException e) {
+            logger.severe("Error counting votes: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Latest name for each player, from the players table or else their most recent vote
+    @Override
+    public Map<UUID, String> getLatestPlayerNames(Set<UUID> voters) {
+        Map<UUID, String> names = new HashMap<>();
+        String votesSql = "SELECT v.player_uuid, v.player_name FROM " + votesTable + " v JOIN (SELECT MAX(id) AS id FROM " + votesTable
+            + " GROUP BY player_uuid) latest ON v.id = latest.id";
+        String playersSql = "SELECT player_uuid, player_name FROM " + playersTable;
+        try (Connection conn = readDataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : new String[] {votesSql, playersSql}) {
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        names.put(UUID.fromString(rs.getString("player_uuid")), rs.getString("player_name"));
+                    }
+                }
+            }
+            // voters whose raw votes have all been rolled up
+            if (schemaMigrator.isProvided("vote_summary")) {
+                String summarySql = "SELECT player_name FROM " + voteSummaryTable + " WHERE player_uuid = ? ORDER BY vote_day DESC LIMIT 1";
+                try (PreparedStatement pstmt = conn.prepareStatement(summarySql)) {
+                    for (UUID uuid : voters) {
+                        if (names.containsKey(uuid)) continue;
+                        pstmt.setString(1, uuid.toString());
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            if (rs.next()) {
+                                names.put(uuid, rs.getString("player_name"));
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe("Error loading player names: " + e.getMessage());
+        }
+        return names;
+    }
+
+    // Stream votes recorded within the last windowSeconds
+    @Override
+    public void forEachRecentVote(long windowSeconds, RecentVoteConsumer consumer) {
+        // vote_ts is written by the database clock, so age is computed there too
+        boolean voteStamps = (features() & JdbcStatements.VOTE_STAMPS) != 0;
+        String stampColumn = voteStamps ? ", vote_stamp" : "";
+        String sql;
+        if (isMySQL) {
+            sql = "SELECT player_uuid, player_name, vote_service" + stampColumn + ", TIMESTAMPDIFF(SECOND, vote_ts, CURRENT_TIMESTAMP) AS age FROM " + votesTable
+                + " WHERE vote_ts >= CURRENT_TIMESTAMP - INTERVAL ? SECOND ORDER BY vote_ts";
+        } else {
+            sql = "SELECT player_uuid, player_name, vote_service" + stampColumn + ", CAST((julianday('now') - julianday(vote_ts)) * 86400 AS INTEGER) AS age FROM " + votesTable
+                + " WHERE vote_ts >= datetime('now', '-' || ? || ' seconds') ORDER BY vote_ts";
+        }
+        try (Connection conn = readDataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, windowSeconds);
+            pstmt.setFetchSize(1000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long voteStamp = voteStamps ? rs.getLong("vote_stamp") : 0;
+                    consumer.accept(UUID.fromString(rs.getString("player_uuid")), rs.getString("player_name"), rs.getString("vote_service"), voteStamp, rs.getLong("age"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe("Error reading recent votes: " + e.getMessage());
+        }
+    }
+
+    // Latest raw vote, or the latest rolled up one if all raw votes are gone
+    @Override
+    public Timestamp getLastVoteTime(UUID uuid) {
+        int features = features();
+        Timestamp lastVote = null;
+        try (Connection conn = readDataSource.getConnection()) {
+            try {
+                PreparedStatement pstmt = statements.prepare(conn, Query.LAST_VOTE, features);
+                pstmt.setString(1, uuid.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        lastVote = rs.getTimestamp(1);
+                    }
+                }
+
+                // all raw votes rolled up, use the daily totals
+                if (lastVote == null && schemaMigrator.isProvided("vote_summary")) {
+                    PreparedStatement summaryStmt = statements.prepare(conn, Query.LAST_SUMMARY_VOTE, features);
+                    summaryStmt.setString(1, uuid.toString());
+                    try (ResultSet summaryRs = summaryStmt.executeQuery()) {
+                        if (summaryRs.next()) {
+                            lastVote = summaryRs.getTimestamp(1);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                statements.discard(conn);
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.severe("Error fetching player vote stats: " + e.getMessage());
+        }
+        return lastVote;
+    }
+
+    // Move one chunk of old votes into the summary table in one transaction, returns the number of votes moved
+    @Override
+    public int rollupVotes(int olderThanDays, int limit) {
+        if (!schemaMigrator.isProvided("vote_summary")) {
+            return 0;
+        }
+        String cutoff = isMySQL ? "CURRENT_TIMESTAMP - INTERVAL ? DAY" : "datetime('now', '-' || ? || ' days')";
+        String selectSql = "SELECT id, player_uuid, player_name, vote_service, DATE(vote_ts) AS vote_day, vote_ts FROM " + votesTable
+            + " WHERE vote_ts < " + cutoff + " ORDER BY vote_ts LIMIT ?";
+        String upsertSql = isMySQL
+            ? "INSERT INTO " + voteSummaryTable + " (player_uuid, vote_day, vote_service, player_name, vote_count, last_vote_ts) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE player_name = VALUES(player_name), vote_count = vote_count + VALUES(vote_count), last_vote_ts = GREATEST(last_vote_ts, VALUES(last_vote_ts))"
+            : "INSERT INTO " + voteSummaryTable + " (player_uuid, vote_day, vote_service, player_name, vote_count, last_vote_ts) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT (player_uuid, vote_day, vote_service) DO UPDATE SET player_name = excluded.player_name, "
+                + "vote_count = vote_count + excluded.vote_count, last_vote_ts = MAX(last_vote_ts, excluded.last_vote_ts)";
+        String deleteSql = "DELETE FROM " + votesTable + " WHERE id = ?";
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // daily totals keyed by player, day and service; rows come oldest first so the latest name wins
+                Map<String, String[]> days = new HashMap<>();
+                Map<String, Integer> dayCounts = new HashMap<>();
+                List<Long> ids = new ArrayList<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                    pstmt.setInt(1, olderThanDays);
+                    pstmt.setInt(2, limit);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            String[] row = {rs.getString("player_uuid"), rs.getString("vote_day"), rs.getString("vote_service"), rs.getString("player_name"), rs.getString("vote_ts")};
+                            String key = row[0] + "|" + row[1] + "|" + row[2];
+                            days.put(key, row);
+                            dayCounts.merge(key, 1, Integer::sum);
+                            ids.add(rs.getLong("id"));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.rollback();
+                    return 0;
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(upsertSql)) {
+                    for (Map.Entry<String, String[]> entry : days.entrySet()) {
+                        String[] row = entry.getValue();
+                        pstmt.setString(1, row[0]);
+                        pstmt.setString(2, row[1]);
+                        pstmt.setString(3, row[2]);
+                        pstmt.setString(4, row[3]);
+                        pstmt.setInt(5, dayCounts.get(entry.getKey()));
+                        pstmt.setString(6, row[4]);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+                    for (long id : ids) {
+                        pstmt.setLong(1, id);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                conn.commit();
+                return ids.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.severe("Error rolling up old votes: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Add or update player in players table, an upsert on both databases so the claim
+    // watermark of an existing player is left alone
+    @Override
+    public void addOrUpdatePlayer(UUID uuid, String playerName) {
+        int features = features();
+        try {
+            withStatement(dataSource, Query.UPSERT_PLAYER, features, pstmt -> {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setString(2, playerName);
+                if (isMySQL) {
+                    pstmt.setString(3, playerName);
+                }
+                return pstmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            logger.severe("Error adding/updating player: " + e.getMessage());
+        }
+    }
+
+    // Get player UUID from players table by name
+    @Override
+    public UUID getPlayerUUID(String playerName) {
+        int features = features();
+        try {
+            return withStatement(readDataSource, Query.PLAYER_UUID, features, pstmt -> {
+                pstmt.setString(1, playerName);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? UUID.fromString(rs.getString(1)) : null;
+                }
+            });
+        } catch (SQLException e) {
+            logger.severe("Error getting player UUID: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // One page of players in text UUID order, which the primary key index serves
+    @Override
+    public List<UUID> getPlayersAfter(UUID after, int limit) {
+        List<UUID> players = new ArrayList<>(limit);
+        String query = "SELECT player_uuid FROM " + playersTable + " WHERE player_uuid > ? ORDER BY player_uuid LIMIT ?";
+        try (Connection conn = readDataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, after == null ? "" : after.toString());
+            pstmt.setInt(2, limit);
+            pstmt.setFetchSize(limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    players.add(UUID.fromString(rs.getString(1)));
+                }
+                return players;
+            }
+        } catch (SQLException e) {
+            logger.severe("Error getting players: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Get player name from players table
+    @Override
+    public String getPlayerName(UUID uuid) {
+        int features = features();
+        try {
+            return withStatement(readDataSource, Query.PLAYER_NAME, features, pstmt -> {
+                pstmt.setString(1, uuid.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            });
+        } catch (SQLException e) {
+            logger.severe("Error getting player name: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void addOfflineReward(UUID uuid, String rewardId, String serviceName) {
+        int features = features();
+        try {
+            withStatement(dataSource, Query.ADD_OFFLINE_REWARD, features, pstmt -> {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setString(2, rewardId);
+                pstmt.setString(3, serviceName);
+                pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                return pstmt.executeUpdate();
+            });
+            // logger.info("Added offline reward for " + uuid + " with reward ID " + rewardId + " from service " + serviceName);
+        } catch (SQLException e) {
+            logger.severe("Error adding offline reward: " + e.getMessage());
+        }
+    }
+
+    // One grant row per reward in a single transaction
+    @Override
+    public void addRewardGrants(List<String> rewardIds, String serviceName) {
+        if (!schemaMigrator.isProvided("reward_grants")) {
+            addOfflineRewardsForAllPlayers(rewardIds, serviceName, Math.max(1, config.getInt("server_rewards.page_size", 1000)));
+            return;
+        }
+        String sql = "INSERT INTO " + rewardGrantsTable + " (reward_id, vote_service, grant_ts) VALUES (?, ?, ?)";
+        Timestamp grantTs = new Timestamp(System.currentTimeMillis());
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (String rewardId : rewardIds) {
+                    pstmt.setString(1, rewardId);
+                    pstmt.setString(2, serviceName);
+                    pstmt.setTimestamp(3, grantTs);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.severe("Error adding reward grants: " + e.getMessage());
+        }
+    }
+
+    // Without the grants table every player gets their own offline reward rows: a set-based
+    // INSERT ... SELECT from the players table, one primary key range per transaction so the
+    // write lock is never held for the whole table
+    private void addOfflineRewardsForAllPlayers(List<String> rewardIds, String serviceName, int chunkSize) {
+        String columns = "player_uuid, reward_id, vote_service, reward_ts";
+        String values = "player_uuid, ?, ?, ?";
+        String boundSql = "SELECT player_uuid FROM " + playersTable + " WHERE player_uuid > ? ORDER BY player_uuid LIMIT 1 OFFSET ?";
+        String rangeSql = "INSERT INTO " + offlineRewardsTable + " (" + columns + ") SELECT " + values + " FROM " + playersTable
+            + " WHERE player_uuid > ? AND player_uuid <= ?";
+        String lastSql = "INSERT INTO " + offlineRewardsTable + " (" + columns + ") SELECT " + values + " FROM " + playersTable
+            + " WHERE player_uuid > ?";
+        Timestamp rewardTs = new Timestamp(System.currentTimeMillis());
+
+        String low = "";
+        try (Connection conn = dataSource.getConnection()) {
+            while (low != null) {
+                // upper end of the next range of chunkSize players, null for the last range
+                String high = null;
+                try (PreparedStatement pstmt = conn.prepareStatement(boundSql)) {
+                    pstmt.setString(1, low);
+                    pstmt.setInt(2, chunkSize - 1);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            high = rs.getString(1);
+                        }
+                    }
+                }
+
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(high == null ? lastSql : rangeSql)) {
+                    for (String rewardId : rewardIds) {
+                        pstmt.setString(1, rewardId);
+                        pstmt.setString(2, serviceName);
+                        pstmt.setTimestamp(3, rewardTs);
+                        pstmt.setString(4, low);
+                        if (high != null) {
+                            pstmt.setString(5, high);
+                        }
+                        pstmt.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                low = high;
+            }
+        } catch (SQLException e) {
+            logger.severe("Error adding offline rewards for all players: " + e.getMessage());
+        }
+    }
+
+    // Personal offline rewards and unclaimed grants for player in one query
+    @Override
+    public List<OfflineReward> getOfflineRewards(UUID uuid) {
+        int features = features();
+        try {
+            return withStatement(readDataSource, Query.OFFLINE_REWARDS, features, pstmt -> {
+                pstmt.setString(1, uuid.toString());
+                if ((features & JdbcStatements.GRANTS) != 0) {
+                    pstmt.setString(2, uuid.toString());
+                }
+                List<OfflineReward> rewards = new ArrayList<>();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rewards.add(new OfflineReward(rs.getString(1), rs.getString(2), rs.getTimestamp(3).getTime(), rs.getLong(4)));
+                    }
+                }
+                return rewards;
+            });
+        } catch (SQLException e) {
+            logger.severe("Error getting offline rewards: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    // Remove specific offline reward for player
+    @Override
+    public void removeOfflineReward(UUID uuid, String rewardId) {
+        int features = features();
+        try {
+            withStatement(dataSource, Query.REMOVE_OFFLINE_REWARD, features, pstmt -> {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setString(2, rewardId);
+                return pstmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            logger.severe("Error removing offline reward: " + e.getMessage());
+        }
+    }
+
+    // Advance the player's watermark, never moving it back
+    @Override
+    public void claimRewardGrants(UUID uuid, long grantId) {
+        int features = features();
+        if ((features & JdbcStatements.GRANTS) == 0) {
+            return;
+        }
+        try {
+            withStatement(dataSource, Query.CLAIM_GRANTS, features, pstmt -> {
+                pstmt.setLong(1, grantId);
+                pstmt.setString(2, uuid.toString());
+                pstmt.setLong(3, grantId);
+                return pstmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            logger.severe("Error claiming reward grants: " + e.getMessage());
+        }
+    }
+
+    // Clear up to limit old offline rewards and up to limit old grants, in short transactions
+    @Override
+    public int expireRewards(long cutoffTime, int limit) {
+        // SQLite has no DELETE ... LIMIT unless built with it, so pick the rowids first
+        String sql = isMySQL
+            ? "DELETE FROM " + offlineRewardsTable + " WHERE reward_ts < ? LIMIT ?"
+            : "DELETE FROM " + offlineRewardsTable + " WHERE rowid IN (SELECT rowid FROM " + offlineRewardsTable + " WHERE reward_ts < ? LIMIT ?)";
+        // the newest grant stays, MySQL before 8.0 restarts AUTO_INCREMENT from the highest id left
+        String newestSql = "SELECT COALESCE(MAX(grant_id), 0) FROM " + rewardGrantsTable;
+        String grantsSql = isMySQL
+            ? "DELETE FROM " + rewardGrantsTable + " WHERE grant_ts < ? AND grant_id < ? LIMIT ?"
+            : "DELETE FROM " + rewardGrantsTable + " WHERE grant_id IN (SELECT grant_id FROM " + rewardGrantsTable + " WHERE grant_ts < ? AND grant_id < ? LIMIT ?)";
+        Timestamp cutoff = new Timestamp(cutoffTime);
+        try (Connection conn = dataSource.getConnection()) {
+            int deleted;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setTimestamp(1, cutoff);
+                pstmt.setInt(2, limit);
+                deleted = pstmt.executeUpdate();
+            }
+            if (schemaMigrator.isProvided("reward_grants")) {
+                long newest = 0;
+                try (PreparedStatement pstmt = conn.prepareStatement(newestSql);
+                     ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        newest = rs.getLong(1);
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(grantsSql)) {
+                    pstmt.setTimestamp(1, cutoff);
+                    pstmt.setLong(2, newest);
+                    pstmt.setInt(3, limit);
+                    deleted += pstmt.executeUpdate();
+                }
+            }
+            return deleted;
+        } catch (SQLException e) {
+            logger.severe("Error clearing old offline rewards: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Where an import got to, null if it hasn't started
+    public VoteImporter.Checkpoint getImportCheckpoint(String key) throws StoreException {
+        String sql = "SELECT position, rows_imported, complete FROM " + importsTable + " WHERE import_key = ?";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new VoteImporter.Checkpoint(rs.getString(1), rs.getLong(2), rs.getBoolean(3));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StoreException(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // Write a batch of imported votes and the import's checkpoint in one transaction: single votes
+    // go to the votes table at their own time, totals replace the player's summary row for the day
+    // of their last vote (the import time if the source doesn't record it)
+    public void importBatch(String key, List<ImportedVote> votes, String position, long rows) throws StoreException {
+        String votesSql = "INSERT INTO " + votesTable + " (player_uuid, player_name, vote_service, vote_ts) VALUES (?, ?, ?, ?)";
+        String totalsSql = isMySQL
+            ? "INSERT INTO " + voteSummaryTable + " (player_uuid, vote_day, vote_service, player_name, vote_count, last_vote_ts) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE player_name = VALUES(player_name), vote_count = VALUES(vote_count), last_vote_ts = VALUES(last_vote_ts)"
+            : "INSERT INTO " + voteSummaryTable + " (player_uuid, vote_day, vote_service, player_name, vote_count, last_vote_ts) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT (player_uuid, vote_day, vote_service) DO UPDATE SET player_name = excluded.player_name, "
+                + "vote_count = excluded.vote_count, last_vote_ts = excluded.last_vote_ts";
+        long now = System.currentTimeMillis();
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement votesStmt = conn.prepareStatement(votesSql);
+                 PreparedStatement totalsStmt = conn.prepareStatement(totalsSql)) {
+                int singles = 0;
+                int totals = 0;
+                for (ImportedVote vote : votes) {
+                    String playerName = columnValue(vote.playerName(), "unknown", 16);
+                    String serviceName = columnValue(vote.serviceName(), "Import", 100);
+                    if (vote.total()) {
+                        long lastVote = vote.voteTime() > 0 ? vote.voteTime() : now;
+                        totalsStmt.setString(1, vote.uuid().toString());
+                        totalsStmt.setString(2, DAY_FORMAT.format(Instant.ofEpochMilli(lastVote)));
+                        totalsStmt.setString(3, serviceName);
+                        totalsStmt.setString(4, playerName);
+                        totalsStmt.setInt(5, vote.votes());
+                        setTimestamp(totalsStmt, 6, lastVote);
+                        totalsStmt.addBatch();
+                        totals++;
+                    } else {
+                        votesStmt.setString(1, vote.uuid().toString());
+                        votesStmt.setString(2, playerName);
+                        votesStmt.setString(3, serviceName);
+                        setTimestamp(votesStmt, 4, vote.voteTime());
+                        votesStmt.addBatch();
+                        singles++;
+                    }
+                }
+                if (singles > 0) {
+                    votesStmt.executeBatch();
+                }
+                if (totals > 0) {
+                    totalsStmt.executeBatch();
+                }
+                saveImportCheckpoint(conn, key, position, rows, false);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StoreException(e.getMessage(), e);
+        }
+    }
+
+    // Mark an import finished so running it again doesn't repeat it
+    public void finishImport(String key, String position, long rows) throws StoreException {
+        try (Connection conn = dataSource.getConnection()) {
+            saveImportCheckpoint(conn, key, position, rows, true);
+        } catch (SQLException e) {
+            throw new StoreException(e.getMessage(), e);
+        }
+    }
+
+    // Drop the votes table's secondary indexes before a bulk load, returns their names; how to
+    // rebuild them is saved with the import's checkpoint first, so restoreVoteIndexes can put
+    // them back even if the server stops before the import finishes
+    public List<String> deferVoteIndexes(String key) throws StoreException {
+        Map<String, String> indexes = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            if (isMySQL) {
+                String sql = "SELECT INDEX_NAME, COLUMN_NAME, SUB_PART FROM information_schema.STATISTICS"
+                    + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND NON_UNIQUE = 1 ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+                Map<String, List<String>> columns = new LinkedHashMap<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, votesTable);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            String column = rs.getString(2) + (rs.getObject(3) != null ? "(" + rs.getInt(3) + ")" : "");
+                            columns.computeIfAbsent(rs.getString(1), name -> new ArrayList<>()).add(column);
+                        }
+                    }
+                }
+                for (Map.Entry<String, List<String>> entry : columns.entrySet()) {
+                    indexes.put(entry.getKey(), "CREATE INDEX " + entry.getKey() + " ON " + votesTable + " (" + String.join(", ", entry.getValue()) + ")");
+                }
+            } else {
+                String sql = "SELECT name, sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL AND sql NOT LIKE 'CREATE UNIQUE%'";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, votesTable);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            indexes.put(rs.getString(1), rs.getString(2));
+                        }
+                    }
+                }
+            }
+            if (indexes.isEmpty()) {
+                return List.of();
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + importsTable + " SET deferred_indexes = ? WHERE import_key = ?")) {
+                pstmt.setString(1, String.join("\n", indexes.values()));
+                pstmt.setString(2, key);
+                if (pstmt.executeUpdate() == 0) {
+                    // a new import, start its checkpoint here
+                    saveImportCheckpoint(conn, key, null, 0, false);
+                    pstmt.executeUpdate();
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                for (String name : indexes.keySet()) {
+                    stmt.execute(isMySQL ? "DROP INDEX " + name + " ON " + votesTable : "DROP INDEX IF EXISTS " + name);
+                }
+            }
+            return new ArrayList<>(indexes.keySet());
+        } catch (SQLException e) {
+            throw new StoreException(e.getMessage(), e);
+        }
+    }
+
+    // Rebuild the indexes dropped by deferVoteIndexes, at the end of an import or at startup
+    // after one was interrupted
+    public void restoreVoteIndexes() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            Map<String, String> deferred = new LinkedHashMap<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT import_key, deferred_indexes FROM " + importsTable + " WHERE deferred_indexes IS NOT NULL")) {
+                while (rs.next()) {
+                    deferred.put(rs.getString(1), rs.getString(2));
+                }
+            }
+            for (Map.Entry<String, String> entry : deferred.entrySet()) {
+                long start = System.currentTimeMillis();
+                for (String sql : entry.getValue().split("\n")) {
+                    try {
+                        // SQLite keeps the statement without IF NOT EXISTS
+                        stmt.execute(isMySQL ? sql : sql.replaceFirst("(?i)^CREATE INDEX ", "CREATE INDEX IF NOT EXISTS "));
+                    } catch (SQLException e) {
+                        // MySQL 1061: the index is already back
+                        if (!isMySQL || e.getErrorCode() != 1061) {
+                            throw e;
+                        }
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + importsTable + " SET deferred_indexes = NULL WHERE import_key = ?")) {
+                    pstmt.setString(1, entry.getKey());
+                    pstmt.executeUpdate();
+                }
+                logger.info("Rebuilt vote indexes after import " + entry.getKey() + " (" + (System.currentTimeMillis() - start) + " ms)");
+            }
+        } catch (SQLException e) {
+            logger.severe("Error rebuilding vote indexes: " + e.getMessage());
+        }
+    }
+
+    private void saveImportCheckpoint(Connection conn, String key, String position, long rows, boolean complete) throws SQLException {
+        String sql = isMySQL
+            ? "INSERT INTO " + importsTable + " (import_key, position, rows_imported, complete, updated_ts) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) "
+                + "ON DUPLICATE KEY UPDATE position = VALUES(position), rows_imported = VALUES(rows_imported), complete = VALUES(complete), updated_ts = CURRENT_TIMESTAMP"
+            : "INSERT INTO " + importsTable + " (import_key, position, rows_imported, complete, updated_ts) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) "
+                + "ON CONFLICT (import_key) DO UPDATE SET position = excluded.position, rows_imported = excluded.rows_imported, "
+                + "complete = excluded.complete, updated_ts = excluded.updated_ts";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, key);
+            pstmt.setString(2, position);
+            pstmt.setLong(3, rows);
+            pstmt.setInt(4, complete ? 1 : 0);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // A time in the same form as CURRENT_TIMESTAMP: UTC text on SQLite, a TIMESTAMP on MySQL
+    private void setTimestamp(PreparedStatement pstmt, int index, long time) throws SQLException {
+        if (isMySQL) {
+            pstmt.setTimestamp(index, new Timestamp(time));
+        } else {
+            pstmt.setString(index, SQLITE_TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(time)));
+        }
+    }
+
+    // Text that fits a NOT NULL column, fallback when it's missing
+    private static String columnValue(String value, String fallback, int maxLength) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    // Refresh the query planner's statistics, returns the number of tables analyzed
+    public int analyze() {
+        List<String> tables = tableNames();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (isMySQL) {
+                stmt.execute("ANALYZE TABLE " + String.join(", ", tables));
+            } else {
+                // sample at most this many index entries per index, keeps ANALYZE quick on big tables
+                stmt.execute("PRAGMA analysis_limit = 1000");
+                for (String table : tables) {
+                    stmt.execute("ANALYZE " + table);
+                }
+            }
+            return tables.size();
+        } catch (SQLException e) {
+            logger.severe("Error analyzing tables: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Rebuild the tables to reclaim space (MySQL), returns the number of tables optimized
+    public int optimizeTables() {
+        List<String> tables = tableNames();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("OPTIMIZE TABLE " + String.join(", ", tables));
+            return tables.size();
+        } catch (SQLException e) {
+            logger.severe("Error optimizing tables: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // SQLite auto vacuum mode, 2 is INCREMENTAL
+    public int getAutoVacuum() {
+        return pragmaInt("PRAGMA auto_vacuum");
+    }
+
+    // Free pages waiting to be reclaimed
+    public int getFreePages() {
+        return pragmaInt("PRAGMA freelist_count");
+    }
+
+    // Give back up to pages free pages to the file system (SQLite), returns the number freed
+    public int incrementalVacuum(int pages) {
+        int before = getFreePages();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // executeUpdate steps the pragma to completion, execute frees a single page
+            stmt.executeUpdate("PRAGMA incremental_vacuum(" + pages + ")");
+        } catch (SQLException e) {
+            logger.severe("Error running incremental vacuum: " + e.getMessage());
+            return 0;
+        }
+        return Math.max(0, before - getFreePages());
+    }
+
+    // Switch an existing SQLite file to incremental auto vacuum, which needs a full VACUUM;
+    // returns the number of pages freed
+    public int convertToIncrementalVacuum() {
+        int before = getFreePages();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("VACUUM");
+        } catch (SQLException e) {
+            logger.severe("Error converting database to incremental vacuum: " + e.getMessage());
+            return 0;
+        }
+        return Math.max(0, before - getFreePages());
+    }
+
+    // Copy the WAL back into the database and truncate it (SQLite), returns the KiB the WAL held
+    // or -1 if readers kept it from finishing
+    public int checkpointWal() {
+        long walSize = new File(datafolder, "data/delphivote.db-wal").length();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            if (rs.next()) {
+                return rs.getInt(1) != 0 ? -1 : (int) (walSize / 1024);
+            }
+        } catch (SQLException e) {
+            logger.severe("Error checkpointing WAL: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Tables this store uses, including ones added by migrations
+    private List<String> tableNames() {
+        List<String> tables = new ArrayList<>(List.of(votesTable, playersTable, offlineRewardsTable));
+        if (schemaMigrator.isProvided("vote_summary")) {
+            tables.add(voteSummaryTable);
+        }
+        if (schemaMigrator.isProvided("reward_grants")) {
+            tables.add(rewardGrantsTable);
+        }
+        return tables;
+    }
+
+    private int pragmaInt(String sql) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            logger.severe("Error reading " + sql + ": " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Close database connection
+    @Override
+    public void close() {
+        if (schemaMigrator != null) {
+            schemaMigrator.shutdown();
+        }
+        statements.close();
+        if (readDataSource != null && readDataSource != dataSource) {
+            readDataSource.close();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    // Run work with the kept statement for query on a connection from pool; the connection's
+    // statements are prepared again after an error in case one was left unusable
+    private <T> T withStatement(HikariDataSource pool, Query query, int features, StatementWork<T> work) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            try {
+                return work.run(statements.prepare(conn, query, features));
+            } catch (SQLException e) {
+                statements.discard(conn);
+                throw e;
+            }
+        }
+    }
+
+    // Migrations applied so far, picks the variant of each kept statement; read once per call so
+    // a background migration finishing midway can't mix variants
+    private int features() {
+        int features = 0;
+        if (schemaMigrator.isProvided("reward_grants")) {
+            features |= JdbcStatements.GRANTS;
+        }
+        if (schemaMigrator.isProvided("vote_keys")) {
+            features |= JdbcStatements.VOTE_KEYS;
+        }
+        if (schemaMigrator.isProvided("vote_stamps")) {
+            features |= JdbcStatements.VOTE_STAMPS;
+        }
+        return features;
+    }
+
+    // Statements kept for the pooled connections
+    public JdbcStatements getStatements() {
+        return statements;
+    }
+}
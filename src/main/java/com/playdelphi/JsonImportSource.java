@@ -0,0 +1,160 @@
+package com.playdelphi;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.playdelphi.exceptions.ImportException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * JsonImportSource reads vote totals from SuperbVote's votes.json, streaming it so a
+ * large file is never held in memory.
+ *
+ * The file maps player UUIDs to records with the player's name, vote total and last vote
+ * time, either at the top level or, in newer versions, under "records". The position is
+ * the number of records read.
+ */
+
+public class JsonImportSource implements ImportSource {
+    private final Path path;
+    private final String serviceName;
+    private JsonReader reader;
+    private boolean inRecords;
+    private long records;
+    private long skipped;
+
+    // Constructor
+    public JsonImportSource(String location, String serviceName) throws ImportException {
+        this.path = Paths.get(location);
+        this.serviceName = serviceName;
+        if (!Files.isRegularFile(path)) {
+            throw new ImportException("No vote file at " + path.toAbsolutePath());
+        }
+    }
+
+    @Override
+    public boolean singleVotes() {
+        return false;
+    }
+
+    @Override
+    public void open(String position) throws ImportException {
+        long skip = position == null ? 0 : Long.parseLong(position);
+        try {
+            reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (records < skip && nextRecord() != null) {
+                // already imported
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new ImportException("Error opening " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ImportedVote next() throws ImportException {
+        try {
+            ImportedVote vote;
+            while ((vote = nextRecord()) != null) {
+                if (vote.votes() > 0) {
+                    return vote;
+                }
+                skipped++;
+            }
+            return null;
+        } catch (IOException | IllegalStateException e) {
+            throw new ImportException("Error reading " + path + " after record " + records + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The next record as a vote total (0 votes if it can't be used), null at the end
+    private ImportedVote nextRecord() throws IOException {
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue(); // version and other settings
+                continue;
+            }
+            if (!inRecords && key.equals("records")) {
+                reader.beginObject();
+                inRecords = true;
+                continue;
+            }
+
+            records++;
+            String name = null;
+            int votes = 0;
+            long lastVote = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name": case "lastName":
+                        name = nextString();
+                        break;
+                    case "votes":
+                        votes = (int) nextNumber();
+                        break;
+                    case "lastVoted": case "lastVote": case "last_vote":
+                        lastVote = nextNumber();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(key);
+            } catch (IllegalArgumentException e) {
+                uuid = new UUID(0, 0);
+                votes = 0;
+            }
+            return new ImportedVote(uuid, name, serviceName, lastVote, votes, true);
+        }
+        return null;
+    }
+
+    // A string value, null for anything else
+    private String nextString() throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    // A number value, 0 for anything else
+    private long nextNumber() throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextLong();
+        }
+        reader.skipValue();
+        return 0;
+    }
+
+    @Override
+    public String position() {
+        return String.valueOf(records);
+    }
+
+    @Override
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // read only, nothing to lose
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.playdelphi;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * MaintenanceManager runs database housekeeping on wall clock schedules from the
+ * maintenance section of config.yml.
+ *
+ * A timer looks at the clock every 20 seconds and runs each job whose cron schedule
+ * matched any minute since the last look, so a job is neither skipped nor run twice
+ * when the server lags or a long job holds up the next look. Jobs run one at a time
+ * off the main thread, and the long ones work in chunks with a pause between them so
+ * votes keep being written. Every run logs what it did and how long it took, and the
+ * last run of each job shows in /vote metrics.
+ *
+ * Jobs that don't apply to the storage in use (vacuum on MySQL, anything SQL on the
+ * memory and file stores) aren't registered.
+ */
+
+public class MaintenanceManager {
+    private static final long CHECK_INTERVAL_TICKS = 400; // 20 seconds
+    private static final int MAX_CATCH_UP_MINUTES = 24 * 60;
+    private static final int SQLITE_INCREMENTAL_VACUUM = 2;
+
+    private final DelphiVote plugin;
+    private final Logger logger;
+    private final FileConfiguration config;
+    private final DatabaseManager databaseManager;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final Map<String, String> lastRuns = new ConcurrentHashMap<>();
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final int vacuumPages;
+    private LocalDateTime lastChecked;
+    private BukkitTask timer;
+    private boolean vacuumWarned;
+
+    // The work of a job, returns the number of rows (or pages, tables, KiB) it affected
+    private interface JobTask {
+        long run();
+    }
+
+    // A job with its schedule, null if it only runs on request
+    private record Job(String name, String unit, CronSchedule schedule, JobTask task) {}
+
+    // Constructor
+    public MaintenanceManager(DelphiVote plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.config = plugin.getConfig();
+        this.databaseManager = plugin.getDatabaseManager();
+        this.vacuumPages = Math.max(1, config.getInt("maintenance.vacuum_pages", 2000));
+
+        addJob("expire_rewards", "30 4 * * *", "rows", plugin.getRewardManager()::expireRewards);
+        addJob("rollup_votes", "15 * * * *", "votes", databaseManager::rollupVotes);
+        if (databaseManager.getVoteStore() instanceof JdbcVoteStore store) {
+            addJob("analyze", "0 5 * * 0", "tables", store::analyze);
+            if (store.isMySQL()) {
+                addJob("optimize", "", "tables", store::optimizeTables);
+            } else {
+                addJob("vacuum", "45 4 * * *", "pages", () -> vacuum(store));
+                addJob("wal_checkpoint", "*/30 * * * *", "KiB", store::checkpointWal);
+            }
+        }
+    }
+
+    // Start checking the schedules
+    public void start() {
+        lastChecked = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        timer = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::checkSchedules, CHECK_INTERVAL_TICKS, CHECK_INTERVAL_TICKS);
+
+        List<String> schedules = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.schedule() != null) {
+                schedules.add(job.name() + " '" + job.schedule() + "'");
+            }
+        }
+        logger.info("Maintenance schedules: " + (schedules.isEmpty() ? "none" : String.join(", ", schedules)));
+    }
+
+    // Run a job now, off the main thread, after any job already running
+    public void runNow(String name) {
+        Job job = jobs.get(name);
+        if (job == null) {
+            logger.warning("No maintenance job " + name);
+            return;
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            runLock.lock();
+            try {
+                runJob(job);
+            } finally {
+                runLock.unlock();
+            }
+        });
+    }
+
+    // Stop the schedules and give a running job time to finish its chunk
+    public void shutdown() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        try {
+            if (runLock.tryLock(10, TimeUnit.SECONDS)) {
+                runLock.unlock();
+            } else {
+                logger.warning("Maintenance job still running at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getStats() {
+        List<String> runs = new ArrayList<>();
+        for (String name : jobs.keySet()) {
+            String lastRun = lastRuns.get(name);
+            if (lastRun != null) {
+                runs.add(name + " " + lastRun);
+            }
+        }
+        return "Maintenance: " + (runs.isEmpty() ? "no jobs run yet" : String.join(", ", runs)) + (runLock.isLocked() ? " (a job is running)" : "");
+    }
+
+    // Schedule from maintenance.<name>, blank runs the job only on request
+    private void addJob(String name, String defaultSchedule, String unit, JobTask task) {
+        String expression = config.getString("maintenance." + name, defaultSchedule);
+        CronSchedule schedule = null;
+        if (expression != null && !expression.isBlank()) {
+            try {
+                schedule = new CronSchedule(expression);
+            } catch (IllegalArgumentException e) {
+                logger.severe("Invalid maintenance." + name + " schedule '" + expression + "': " + e.getMessage() + ", job disabled");
+            }
+        }
+        jobs.put(name, new Job(name, unit, schedule, task));
+    }
+
+    // Run the jobs due since the last check; skipped while a job is still running, those minutes are checked next time
+    private void checkSchedules() {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+            LocalDateTime minute = lastChecked.plusMinutes(1);
+            if (minute.isBefore(now.minusMinutes(MAX_CATCH_UP_MINUTES))) {
+                minute = now.minusMinutes(MAX_CATCH_UP_MINUTES);
+            }
+            Set<Job> due = new LinkedHashSet<>();
+            for (; !minute.isAfter(now); minute = minute.plusMinutes(1)) {
+                for (Job job : jobs.values()) {
+                    if (job.schedule() != null && job.schedule().matches(minute)) {
+                        due.add(job);
+                    }
+                }
+            }
+            // a clock set back doesn't run the same minutes again
+            if (now.isAfter(lastChecked)) {
+                lastChecked = now;
+            }
+
+            for (Job job : due) {
+                if (!plugin.isEnabled()) {
+                    break;
+                }
+                runJob(job);
+            }
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void runJob(Job job) {
+        long start = System.currentTimeMillis();
+        long rows;
+        try {
+            rows = job.task().run();
+        } catch (RuntimeException e) {
+            logger.severe("Maintenance " + job.name() + " failed: " + e.getMessage());
+            return;
+        }
+        String result = (rows < 0 ? "busy" : rows + " " + job.unit()) + " in " + (System.currentTimeMillis() - start) + " ms";
+        lastRuns.put(job.name(), result + " at " + LocalTime.now().truncatedTo(ChronoUnit.MINUTES));
+        logger.info("Maintenance " + job.name() + ": " + result);
+    }
+
+    // Give free pages back to the file system a chunk at a time; a file created before incremental
+    // vacuum was turned on needs a full VACUUM first, only done when maintenance.sqlite_convert_vacuum is set
+    private long vacuum(JdbcVoteStore store) {
+        if (store.getAutoVacuum() != SQLITE_INCREMENTAL_VACUUM) {
+            if (config.getBoolean("maintenance.sqlite_convert_vacuum", false)) {
+                logger.info("Converting the SQLite database to incremental vacuum, votes are held until it finishes");
+                return store.convertToIncrementalVacuum();
+            }
+            if (!vacuumWarned) {
+                logger.info("SQLite database was created without incremental vacuum, its " + store.getFreePages()
+                    + " free pages stay in the file until maintenance.sqlite_convert_vacuum is turned on");
+                vacuumWarned = true;
+            }
+            return 0;
+        }
+
+        long total = 0;
+        int pages;
+        do {
+            pages = store.incrementalVacuum(vacuumPages);
+            total += pages;
+        } while (pages == vacuumPages && databaseManager.pauseBetweenChunks());
+        return total;
+    }
+}
@@ -0,0 +1,494 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.StoreException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * MemoryVoteStore keeps everything in memory and nothing across restarts.
+ *
+ * Each UUID seen gets a player slot from an open addressing table keyed on the two
+ * halves of the UUID, and per-player data lives in arrays indexed by slot. Votes are
+ * appended to parallel arrays in time order, with player and service names interned
+ * to ints, so a vote costs about 36 bytes with its key and stamp, and recent votes are
+ * found by binary search.
+ *
+ * Server wide rewards are a list of grants, and each player slot holds the id of the
+ * last grant the player claimed.
+ *
+ * Every vote is kept, so rollupVotes has nothing to do.
+ */
+
+public class MemoryVoteStore implements VoteStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // players, one slot per UUID
+    private final UuidIndex slots = new UuidIndex();
+    private UUID[] slotUuids = new UUID[INITIAL_CAPACITY];
+    private int[] slotVotes = new int[INITIAL_CAPACITY];
+    private long[] slotLastVote = new long[INITIAL_CAPACITY];
+    private int[] slotVoteName = new int[INITIAL_CAPACITY];   // name on the latest vote
+    private int[] slotPlayerName = new int[INITIAL_CAPACITY]; // players table name, -1 if not a player
+    private long[] slotLastSeen = new long[INITIAL_CAPACITY];
+    private List<Reward>[] slotRewards = newRewardArray(INITIAL_CAPACITY);
+    private long[] slotClaimedGrant = new long[INITIAL_CAPACITY];
+    private int slotCount;
+    private final Map<String, Integer> slotsByPlayerName = new HashMap<>(); // lower-cased name, latest seen wins
+    private int playerCount;
+    private int[] playersInOrder = new int[0]; // player slots by UUID, rebuilt after a player is added
+    private boolean playersInOrderStale;
+
+    // votes, oldest first
+    private int[] voteSlot = new int[INITIAL_CAPACITY];
+    private long[] voteTime = new long[INITIAL_CAPACITY];
+    private int[] voteName = new int[INITIAL_CAPACITY];
+    private int[] voteService = new int[INITIAL_CAPACITY];
+    private long[] voteKey = new long[INITIAL_CAPACITY];
+    private long[] voteStamp = new long[INITIAL_CAPACITY];
+    private int voteCount;
+
+    // reward grants, oldest first
+    private final List<Grant> grants = new ArrayList<>();
+    private long lastGrantId;
+
+    // interned names
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    // An offline reward waiting for its player
+    private record Reward(String rewardId, String serviceName, long rewardTime) {}
+
+    // A reward granted to every player
+    private record Grant(long grantId, String rewardId, String serviceName, long grantTime) {}
+
+    @Override
+    public synchronized void insertVotes(List<VoteBatchWriter.QueuedVote> votes) throws StoreException {
+        long now = System.currentTimeMillis();
+        for (VoteBatchWriter.QueuedVote vote : votes) {
+            if (isStored(vote)) {
+                vote.duplicate = true;
+                continue;
+            }
+            recordVote(vote.tgt_playerEnv.uuid, vote.tgt_playerEnv.name, vote.serviceName, now, vote.voteKey, vote.voteStamp);
+        }
+    }
+
+    @Override
+    public synchronized Map<UUID, Integer> countVotesByPlayer() {
+        Map<UUID, Integer> counts = new HashMap<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotVotes[slot] > 0) {
+                counts.put(slotUuids[slot], slotVotes[slot]);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<UUID, String> getLatestPlayerNames(Set<UUID> voters) {
+        Map<UUID, String> names = new HashMap<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int name = slotPlayerName[slot] >= 0 ? slotPlayerName[slot] : slotVoteName[slot];
+            if (name >= 0) {
+                names.put(slotUuids[slot], strings.get(name));
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized void forEachRecentVote(long windowSeconds, RecentVoteConsumer consumer) {
+        long now = System.currentTimeMillis();
+        for (int i = firstVoteAtOrAfter(now - windowSeconds * 1000); i < voteCount; i++) {
+            consumer.accept(slotUuids[voteSlot[i]], strings.get(voteName[i]), strings.get(voteService[i]), voteStamp[i], (now - voteTime[i]) / 1000);
+        }
+    }
+
+    @Override
+    public synchronized Timestamp getLastVoteTime(UUID uuid) {
+        int slot = slots.get(uuid);
+        return slot < 0 || slotVotes[slot] == 0 ? null : new Timestamp(slotLastVote[slot]);
+    }
+
+    @Override
+    public int rollupVotes(int olderThanDays, int limit) {
+        return 0;
+    }
+
+    @Override
+    public synchronized void addOrUpdatePlayer(UUID uuid, String playerName) {
+        recordPlayer(uuid, playerName, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized UUID getPlayerUUID(String playerName) {
+        Integer slot = slotsByPlayerName.get(playerName.toLowerCase());
+        return slot == null ? null : slotUuids[slot];
+    }
+
+    @Override
+    public synchronized List<UUID> getPlayersAfter(UUID after, int limit) {
+        if (playersInOrderStale) {
+            playersInOrder = new int[playerCount];
+            int count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotPlayerName[slot] >= 0) {
+                    playersInOrder[count++] = slot;
+                }
+            }
+            playersInOrder = Arrays.stream(playersInOrder).boxed().sorted((a, b) -> slotUuids[a].compareTo(slotUuids[b])).mapToInt(Integer::intValue).toArray();
+            playersInOrderStale = false;
+        }
+
+        // first player after the cursor
+        int low = 0;
+        int high = playersInOrder.length;
+        while (after != null && low < high) {
+            int mid = (low + high) >>> 1;
+            if (slotUuids[playersInOrder[mid]].compareTo(after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<UUID> players = new ArrayList<>(Math.min(limit, playersInOrder.length - low));
+        for (int i = low; i < playersInOrder.length && players.size() < limit; i++) {
+            players.add(slotUuids[playersInOrder[i]]);
+        }
+        return players;
+    }
+
+    @Override
+    public synchronized String getPlayerName(UUID uuid) {
+        int slot = slots.get(uuid);
+        return slot < 0 || slotPlayerName[slot] < 0 ? null : strings.get(slotPlayerName[slot]);
+    }
+
+    @Override
+    public synchronized void addOfflineReward(UUID uuid, String rewardId, String serviceName) {
+        recordReward(uuid, rewardId, serviceName, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void addRewardGrants(List<String> rewardIds, String serviceName) {
+        long now = System.currentTimeMillis();
+        for (String rewardId : rewardIds) {
+            recordGrant(lastGrantId + 1, rewardId, serviceName, now);
+        }
+    }
+
+    @Override
+    public synchronized List<OfflineReward> getOfflineRewards(UUID uuid) {
+        List<OfflineReward> rows = new ArrayList<>();
+        int slot = slots.get(uuid);
+        if (slot < 0) {
+            return rows;
+        }
+        if (slotRewards[slot] != null) {
+            for (Reward reward : slotRewards[slot]) {
+                rows.add(new OfflineReward(reward.rewardId(), reward.serviceName(), reward.rewardTime(), 0));
+            }
+        }
+        if (slotPlayerName[slot] >= 0) {
+            for (Grant grant : grants) {
+                if (grant.grantId() > slotClaimedGrant[slot]) {
+                    rows.add(new OfflineReward(grant.rewardId(), grant.serviceName(), grant.grantTime(), grant.grantId()));
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public synchronized void removeOfflineReward(UUID uuid, String rewardId) {
+        deleteReward(uuid, rewardId);
+    }
+
+    @Override
+    public synchronized void claimRewardGrants(UUID uuid, long grantId) {
+        claimGrants(uuid, grantId);
+    }
+
+    @Override
+    public synchronized int expireRewards(long cutoffTime, int limit) {
+        return deleteRewardsBefore(cutoffTime);
+    }
+
+    @Override
+    public boolean isMigrating() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Number of votes, players and grants held, for FileVoteStore compaction
+    protected synchronized int getRecordCount() {
+        int records = voteCount + playerCount + grants.size();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotRewards[slot] != null) {
+                records += slotRewards[slot].size();
+            }
+        }
+        return records;
+    }
+
+    // Replay everything held, in an order that rebuilds the same state: players come before
+    // grants so their watermarks start at 0 and are then set by their claims
+    protected synchronized void forEachRecord(RecordVisitor visitor) throws StoreException {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotPlayerName[slot] >= 0) {
+                visitor.player(slotUuids[slot], strings.get(slotPlayerName[slot]), slotLastSeen[slot]);
+                if (slotClaimedGrant[slot] > 0) {
+                    visitor.claim(slotUuids[slot], slotClaimedGrant[slot]);
+                }
+            }
+        }
+        for (Grant grant : grants) {
+            visitor.grant(grant.grantId(), grant.rewardId(), grant.serviceName(), grant.grantTime());
+        }
+        for (int i = 0; i < voteCount; i++) {
+            visitor.vote(slotUuids[voteSlot[i]], strings.get(voteName[i]), strings.get(voteService[i]), voteTime[i], voteKey[i], voteStamp[i]);
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotRewards[slot] != null) {
+                for (Reward reward : slotRewards[slot]) {
+                    visitor.reward(slotUuids[slot], reward.rewardId(), reward.serviceName(), reward.rewardTime());
+                }
+            }
+        }
+    }
+
+    // Receives the records from forEachRecord
+    protected interface RecordVisitor {
+        void vote(UUID uuid, String playerName, String serviceName, long voteTime, long voteKey, long voteStamp) throws StoreException;
+        void player(UUID uuid, String playerName, long lastSeen) throws StoreException;
+        void reward(UUID uuid, String rewardId, String serviceName, long rewardTime) throws StoreException;
+        void grant(long grantId, String rewardId, String serviceName, long grantTime) throws StoreException;
+        void claim(UUID uuid, long grantId) throws StoreException;
+    }
+
+    // True for a replayed vote that is already held under its key; it was stored after it was
+    // received, so only votes from then on are checked
+    protected boolean isStored(VoteBatchWriter.QueuedVote vote) {
+        if (!vote.replayed || vote.voteKey == 0) {
+            return false;
+        }
+        for (int i = firstVoteAtOrAfter(vote.receivedTs); i < voteCount; i++) {
+            if (voteKey[i] == vote.voteKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Count a vote, clock steps backwards are recorded at the latest vote time so votes stay in order
+    protected void recordVote(UUID uuid, String playerName, String serviceName, long time, long key, long stamp) {
+        if (voteCount == voteSlot.length) {
+            int capacity = voteCount * 2;
+            voteSlot = Arrays.copyOf(voteSlot, capacity);
+            voteTime = Arrays.copyOf(voteTime, capacity);
+            voteName = Arrays.copyOf(voteName, capacity);
+            voteService = Arrays.copyOf(voteService, capacity);
+            voteKey = Arrays.copyOf(voteKey, capacity);
+            voteStamp = Arrays.copyOf(voteStamp, capacity);
+        }
+        if (voteCount > 0) {
+            time = Math.max(time, voteTime[voteCount - 1]);
+        }
+        int slot = slot(uuid);
+        int name = intern(playerName);
+        voteSlot[voteCount] = slot;
+        voteTime[voteCount] = time;
+        voteName[voteCount] = name;
+        voteService[voteCount] = intern(serviceName);
+        voteKey[voteCount] = key;
+        voteStamp[voteCount] = stamp;
+        voteCount++;
+        slotVotes[slot]++;
+        slotLastVote[slot] = time;
+        slotVoteName[slot] = name;
+    }
+
+    // A new player starts out having claimed every grant made so far
+    protected void recordPlayer(UUID uuid, String playerName, long time) {
+        int slot = slot(uuid);
+        if (slotPlayerName[slot] >= 0) {
+            slotsByPlayerName.remove(strings.get(slotPlayerName[slot]).toLowerCase(), slot);
+        } else {
+            playerCount++;
+            playersInOrderStale = true;
+            slotClaimedGrant[slot] = lastGrantId;
+        }
+        slotPlayerName[slot] = intern(playerName);
+        slotLastSeen[slot] = time;
+        slotsByPlayerName.put(playerName.toLowerCase(), slot);
+    }
+
+    protected void recordReward(UUID uuid, String rewardId, String serviceName, long time) {
+        int slot = slot(uuid);
+        if (slotRewards[slot] == null) {
+            slotRewards[slot] = new ArrayList<>(2);
+        }
+        slotRewards[slot].add(new Reward(rewardId, serviceName, time));
+    }
+
+    protected void deleteReward(UUID uuid, String rewardId) {
+        int slot = slots.get(uuid);
+        if (slot >= 0 && slotRewards[slot] != null) {
+            slotRewards[slot].removeIf(reward -> reward.rewardId().equals(rewardId));
+        }
+    }
+
+    protected void recordGrant(long grantId, String rewardId, String serviceName, long time) {
+        grants.add(new Grant(grantId, rewardId, serviceName, time));
+        lastGrantId = Math.max(lastGrantId, grantId);
+    }
+
+    protected void claimGrants(UUID uuid, long grantId) {
+        int slot = slots.get(uuid);
+        if (slot >= 0 && slotPlayerName[slot] >= 0) {
+            slotClaimedGrant[slot] = Math.max(slotClaimedGrant[slot], grantId);
+        }
+    }
+
+    protected long getLastGrantId() {
+        return lastGrantId;
+    }
+
+    // Offline rewards and grants before the cutoff, keeping the newest grant like the SQL stores do
+    protected int deleteRewardsBefore(long cutoffTime) {
+        int grantsBefore = grants.size();
+        grants.removeIf(grant -> grant.grantTime() < cutoffTime && grant.grantId() < lastGrantId);
+        int deleted = grantsBefore - grants.size();
+        for (int slot = 0; slot < slotCount; slot++) {
+            List<Reward> rewards = slotRewards[slot];
+            if (rewards != null) {
+                int before = rewards.size();
+                rewards.removeIf(reward -> reward.rewardTime() < cutoffTime);
+                deleted += before - rewards.size();
+            }
+        }
+        return deleted;
+    }
+
+    // Index of the first vote at or after time, votes are in time order
+    private int firstVoteAtOrAfter(long time) {
+        int low = 0;
+        int high = voteCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (voteTime[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Slot for a UUID, adding one if it's new
+    private int slot(UUID uuid) {
+        int slot = slots.get(uuid);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (slotCount == slotUuids.length) {
+            int capacity = slotCount * 2;
+            slotUuids = Arrays.copyOf(slotUuids, capacity);
+            slotVotes = Arrays.copyOf(slotVotes, capacity);
+            slotLastVote = Arrays.copyOf(slotLastVote, capacity);
+            slotVoteName = Arrays.copyOf(slotVoteName, capacity);
+            slotPlayerName = Arrays.copyOf(slotPlayerName, capacity);
+            slotLastSeen = Arrays.copyOf(slotLastSeen, capacity);
+            slotRewards = Arrays.copyOf(slotRewards, capacity);
+            slotClaimedGrant = Arrays.copyOf(slotClaimedGrant, capacity);
+        }
+        slot = slotCount++;
+        slotUuids[slot] = uuid;
+        slotVoteName[slot] = -1;
+        slotPlayerName[slot] = -1;
+        slots.put(uuid, slot);
+        return slot;
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Reward>[] newRewardArray(int size) {
+        return new List[size];
+    }
+
+    // Open addressing map from UUID to slot, keyed on the UUID's two longs
+    private static class UuidIndex {
+        private long[] most = new long[INITIAL_CAPACITY * 2];
+        private long[] least = new long[INITIAL_CAPACITY * 2];
+        private int[] values = new int[INITIAL_CAPACITY * 2]; // slot + 1, 0 is empty
+        private int size;
+
+        int get(UUID uuid) {
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            int mask = values.length - 1;
+            for (int i = hash(msb, lsb) & mask; values[i] != 0; i = (i + 1) & mask) {
+                if (most[i] == msb && least[i] == lsb) {
+                    return values[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        void put(UUID uuid, int slot) {
+            if ((size + 1) * 2 > values.length) {
+                grow();
+            }
+            insert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), slot + 1);
+            size++;
+        }
+
+        private void insert(long msb, long lsb, int value) {
+            int mask = values.length - 1;
+            int i = hash(msb, lsb) & mask;
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            most[i] = msb;
+            least[i] = lsb;
+            values[i] = value;
+        }
+
+        private void grow() {
+            long[] oldMost = most;
+            long[] oldLeast = least;
+            int[] oldValues = values;
+            most = new long[oldValues.length * 2];
+            least = new long[oldValues.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != 0) {
+                    insert(oldMost[i], oldLeast[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long msb, long lsb) {
+            long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.playdelphi;
+
+// A reward waiting for a player: their own offline reward (grantId 0) or a server grant they
+// haven't claimed yet; rewardTime is when it was given, in epoch milliseconds
+public record OfflineReward(String rewardId, String serviceName, long rewardTime, long grantId) {
+
+    public boolean isGrant() {
+        return grantId != 0;
+    }
+}
@@ -0,0 +1,37 @@
+package com.playdelphi;
+
+import java.util.List;
+
+// A single vote as it moves through the VotePipeline stages
+public class PendingVote {
+
+    public PlayerEnv playerEnv;         // initiating player (null for Votifier votes until resolved)
+    public PlayerEnv tgt_playerEnv;     // target player, set by the resolve stage
+    public String tgt_playerName;
+    public String serviceName;
+    public String voteTimestamp;        // timestamp from the Votifier payload, null for admin votes
+    public long receivedTs;
+    public long journalId = -1;         // position in the VoteJournal, -1 if not journaled
+    public long voteKey;                // unique per vote, kept with it in the store
+    public long voteStamp;              // VoteDedupWindow stamp of voteTimestamp, 0 for none
+    public boolean replayed;            // read back from the VoteJournal, may be stored already
+
+    // set by the resolve stage
+    public int resolveAttempts;         // failed lookups so far, retried with backoff
+
+    // set by the persist stage
+    public boolean persisted;
+    public int playerVoteCount;
+    public int serverVoteCount;
+
+    // set by the evaluate stage
+    public List<RewardTrigger> triggers;
+
+    // Constructor
+    public PendingVote(PlayerEnv playerEnv, String tgt_playerName, String serviceName) {
+        this.playerEnv = playerEnv;
+        this.tgt_playerName = tgt_playerName;
+        this.serviceName = serviceName;
+        this.receivedTs = System.currentTimeMillis();
+    }
+}
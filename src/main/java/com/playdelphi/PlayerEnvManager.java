@@ -23,17 +23,21 @@ public class PlayerEnvManager {
         return playerEnvMap.compute(player.getUniqueId(), (key, playerEnv) -> new PlayerEnv(player));
     }
 
-    // Get or create PlayerEnv by UUID (best option)
+    // Get the PlayerEnv of a logged in player by UUID, null if there isn't one
     public PlayerEnv getPlayerEnv(UUID uuid) {
-        return playerEnvMap.computeIfAbsent(uuid, key -> new PlayerEnv(uuid));
+        return playerEnvMap.get(uuid);
     }
 
-    // Get or create PlayerEnv by name (only use if uuid is unknown)
+    // Get PlayerEnv by name (only use if uuid is unknown); runs off the main thread, so offline
+    // players get a PlayerEnv of their own that isn't kept, only logins and quits change the map
     public PlayerEnv getPlayerEnv(String name) {
 
-        UUID uuid = plugin.getUtilsManager().mojangUUIDLookup(name);
+        UUID uuid = plugin.getUUIDResolver().resolve(name);
 
-        PlayerEnv thisPlayer = playerEnvMap.computeIfAbsent(uuid, key -> new PlayerEnv(uuid));
+        PlayerEnv thisPlayer = playerEnvMap.get(uuid);
+        if (thisPlayer == null) {
+            thisPlayer = new PlayerEnv(uuid);
+        }
 
         if (thisPlayer.player != null) {
                 thisPlayer.name = thisPlayer.player.getName(); // get name from player object
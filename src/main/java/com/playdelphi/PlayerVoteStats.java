@@ -0,0 +1,7 @@
+package com.playdelphi;
+
+import java.sql.Timestamp;
+
+// A player's vote total and when they last voted, lastVote is null if they never have
+public record PlayerVoteStats(int totalVotes, Timestamp lastVote) {
+}
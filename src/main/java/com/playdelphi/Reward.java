@@ -0,0 +1,7 @@
+package com.playdelphi;
+
+import java.util.List;
+
+// A reward from reward_items.yml, read once when the rewards are loaded
+public record Reward(String key, String name, List<RewardItem> items, boolean randomized, int maxItems) {
+}
@@ -0,0 +1,185 @@
+package com.playdelphi;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * RewardCommandExecutor runs reward console commands on the main thread, at most
+ * reward_commands.max_per_tick each tick, in the order they were queued.
+ *
+ * Commands starting with one of the reward_commands.coalesce prefixes (e.g. 'eco give')
+ * are merged while they wait: one identical to a queued command apart from a trailing
+ * number adds that number to it, and an exact repeat of a queued command without one is
+ * dropped. Only list commands where that's the same as running each one, such as giving
+ * money. Time spent per command prefix shows in /vote metrics, to find slow plugins.
+ *
+ * Main thread only.
+ */
+
+public class RewardCommandExecutor {
+    private static final int STATS_PREFIXES = 5;
+
+    private final DelphiVote plugin;
+    private final Logger logger;
+    private final int maxPerTick;
+    private final List<String> coalescePrefixes = new ArrayList<>();
+    private final ArrayDeque<QueuedCommand> queue = new ArrayDeque<>();
+    private final Map<String, QueuedCommand> coalescing = new HashMap<>();
+    private final Map<String, long[]> timings = new HashMap<>(); // prefix -> runs, nanos, max nanos
+    private BukkitTask timer;
+
+    // stats
+    private long commandsRun;
+    private long commandsCoalesced;
+    private int maxQueued;
+
+    // A command waiting to run; base and amount are set when it can take coalesced repeats
+    private static class QueuedCommand {
+        final String prefix;
+        final String base;
+        String command;
+        BigDecimal amount;
+
+        QueuedCommand(String prefix, String command, String base, BigDecimal amount) {
+            this.prefix = prefix;
+            this.command = command;
+            this.base = base;
+            this.amount = amount;
+        }
+    }
+
+    // Constructor
+    public RewardCommandExecutor(DelphiVote plugin, int maxPerTick, List<String> coalescePrefixes) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.maxPerTick = Math.max(1, maxPerTick);
+        for (String prefix : coalescePrefixes) {
+            String trimmed = prefix.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                this.coalescePrefixes.add(trimmed.startsWith("/") ? trimmed.substring(1) : trimmed);
+            }
+        }
+    }
+
+    // Start running commands, one batch per tick
+    public void start() {
+        timer = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    // Queue a reward command for a player
+    public void submit(CommandTemplate template, String playerName) {
+        String command = template.render(playerName);
+        if (!coalesces(command)) {
+            add(new QueuedCommand(template.prefix(), command, null, null));
+            return;
+        }
+
+        // split off a trailing number, what's left must match exactly
+        int space = command.lastIndexOf(' ');
+        String base = command;
+        BigDecimal amount = null;
+        if (space > 0) {
+            try {
+                amount = new BigDecimal(command.substring(space + 1));
+                base = command.substring(0, space);
+            } catch (NumberFormatException e) {
+                // no trailing number
+            }
+        }
+        String key = (amount == null ? "=" : "+") + base;
+        QueuedCommand queued = coalescing.get(key);
+        if (queued != null) {
+            if (amount != null) {
+                queued.amount = queued.amount.add(amount);
+                queued.command = base + " " + queued.amount.toPlainString();
+            }
+            commandsCoalesced++;
+            return;
+        }
+        queued = new QueuedCommand(template.prefix(), command, key, amount);
+        coalescing.put(key, queued);
+        add(queued);
+    }
+
+    private void add(QueuedCommand queued) {
+        queue.add(queued);
+        maxQueued = Math.max(maxQueued, queue.size());
+    }
+
+    private boolean coalesces(String command) {
+        if (coalescePrefixes.isEmpty()) {
+            return false;
+        }
+        String lower = command.toLowerCase(Locale.ROOT);
+        for (String prefix : coalescePrefixes) {
+            if (lower.startsWith(prefix) && (lower.length() == prefix.length() || lower.charAt(prefix.length()) == ' ')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Run up to max_per_tick commands
+    void tick() {
+        for (int i = 0; i < maxPerTick && !queue.isEmpty(); i++) {
+            run(queue.poll());
+        }
+    }
+
+    private void run(QueuedCommand queued) {
+        if (queued.base != null) {
+            coalescing.remove(queued.base);
+        }
+        long start = System.nanoTime();
+        try {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), queued.command);
+        } catch (Exception e) {
+            logger.severe("Error running reward command '" + queued.command + "': " + e.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+        long[] timing = timings.computeIfAbsent(queued.prefix, prefix -> new long[3]);
+        timing[0]++;
+        timing[1] += elapsed;
+        timing[2] = Math.max(timing[2], elapsed);
+        commandsRun++;
+    }
+
+    // Stop the timer and run what's left
+    public void shutdown() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (!queue.isEmpty()) {
+            logger.info("Running " + queue.size() + " queued reward commands before shutdown");
+        }
+        while (!queue.isEmpty()) {
+            run(queue.poll());
+        }
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    // Totals, then the prefixes that took the most time
+    public String getStats() {
+        List<Map.Entry<String, long[]>> slowest = new ArrayList<>(timings.entrySet());
+        slowest.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        List<String> prefixes = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : slowest.subList(0, Math.min(STATS_PREFIXES, slowest.size()))) {
+            long[] timing = entry.getValue();
+            prefixes.add(String.format("%s %d runs avg %d us max %d us", entry.getKey(), timing[0], timing[1] / timing[0] / 1000, timing[2] / 1000));
+        }
+        return String.format("Reward commands: %d run, %d coalesced, %d queued (max %d, max_per_tick %d)%s",
+            commandsRun, commandsCoalesced, queue.size(), maxQueued, maxPerTick,
+            prefixes.isEmpty() ? "" : "; " + String.join(", ", prefixes));
+    }
+}
@@ -0,0 +1,113 @@
+package com.playdelphi;
+
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * RewardDeliveryScheduler spreads reward deliveries (inventory items, with their console
+ * commands handed on to the RewardCommandExecutor) over server ticks.
+ *
+ * Deliveries are queued on the main thread and run by a task every tick until
+ * reward_delivery.tick_budget_us of that tick is spent; the rest wait for the next tick,
+ * in the order they were queued. At least one delivery runs each tick, so the queue always
+ * moves. A server trigger that rewards every online player then costs a few ticks of
+ * delivery instead of one long tick. Queue depth, time spent per tick and how long
+ * deliveries waited show in /vote metrics.
+ *
+ * Main thread only.
+ */
+
+public class RewardDeliveryScheduler {
+    private final DelphiVote plugin;
+    private final Logger logger;
+    private final long budgetNanos;
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+    private BukkitTask timer;
+
+    // stats
+    private long delivered;
+    private long busyTicks;
+    private long spentNanos;
+    private long maxSpentNanos;
+    private long lagNanos;
+    private long maxLagNanos;
+    private int maxQueued;
+
+    // A delivery waiting for its tick
+    private record Delivery(Runnable task, long queuedAt) {}
+
+    // Constructor
+    public RewardDeliveryScheduler(DelphiVote plugin, long budgetMicros) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.budgetNanos = Math.max(1, budgetMicros) * 1000;
+    }
+
+    // Start delivering, one run per tick
+    public void start() {
+        timer = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    // Queue a delivery for the next tick with budget left
+    public void submit(Runnable task) {
+        queue.add(new Delivery(task, System.nanoTime()));
+        maxQueued = Math.max(maxQueued, queue.size());
+    }
+
+    // Run deliveries until this tick's budget is spent
+    void tick() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long now = start;
+        do {
+            Delivery delivery = queue.poll();
+            long lag = now - delivery.queuedAt();
+            lagNanos += lag;
+            maxLagNanos = Math.max(maxLagNanos, lag);
+            run(delivery);
+            now = System.nanoTime();
+        } while (!queue.isEmpty() && now - start < budgetNanos);
+
+        long spent = now - start;
+        busyTicks++;
+        spentNanos += spent;
+        maxSpentNanos = Math.max(maxSpentNanos, spent);
+    }
+
+    private void run(Delivery delivery) {
+        try {
+            delivery.task().run();
+        } catch (Exception e) {
+            logger.severe("Error delivering reward: " + e.getMessage());
+        }
+        delivered++;
+    }
+
+    // Stop the timer and deliver what's left, the server is stopping so the budget doesn't matter
+    public void shutdown() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (!queue.isEmpty()) {
+            logger.info("Delivering " + queue.size() + " queued rewards before shutdown");
+        }
+        Delivery delivery;
+        while ((delivery = queue.poll()) != null) {
+            run(delivery);
+        }
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public String getStats() {
+        return String.format("Reward delivery: %d delivered, %d queued (max %d), %d busy ticks spending avg %d us / max %d us (budget %d us), waited avg %.1f ms / max %.1f ms",
+            delivered, queue.size(), maxQueued, busyTicks,
+            busyTicks == 0 ? 0 : spentNanos / busyTicks / 1000, maxSpentNanos / 1000, budgetNanos / 1000,
+            delivered == 0 ? 0.0 : lagNanos / (double) delivered / 1_000_000, maxLagNanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,9 @@
+package com.playdelphi;
+
+import java.util.List;
+import org.bukkit.inventory.ItemStack;
+
+// One item of a reward, built when reward_items.yml is loaded: prototype is cloned for each
+// grant, or for a Head Database item (headId set, prototype null) the head is looked up then
+public record RewardItem(ItemStack prototype, String headId, int quantity, String title, List<String> lore, List<CommandTemplate> commands) {
+}
@@ -1,18 +1,16 @@
 package com.playdelphi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
-import org.bukkit.Bukkit;
-import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.Material;
 
 public class RewardManager {
@@ -21,89 +19,81 @@ public class RewardManager {
     private final ConfigManager configManager;
     private final DatabaseManager databaseManager;
     private final LanguageManager languageManager;
-    private final Object headDatabaseAPI;
+    private final HeadDatabaseHook headDatabase;
     private final PlayerEnvManager playerEnvManager;
     private final Random random;
+    private volatile TriggerIndex triggerIndex;
+    private volatile RewardTable rewardTable;
+    private final RewardDeliveryScheduler rewardDelivery;
+    private final RewardCommandExecutor rewardCommands;
+    private final Object claimLock = new Object();
 
     public RewardManager(DelphiVote plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
         this.configManager = plugin.getConfigManager();
         this.databaseManager = plugin.getDatabaseManager();
-        this.headDatabaseAPI = plugin.getHeadDatabaseAPI();
+        this.headDatabase = plugin.getHeadDatabase();
         this.languageManager = plugin.getLanguageManager();
         this.playerEnvManager = plugin.getPlayerEnvManager();
         this.random = new Random();
+        this.rewardDelivery = new RewardDeliveryScheduler(plugin, plugin.getConfig().getLong("reward_delivery.tick_budget_us", 2000));
+        this.rewardCommands = new RewardCommandExecutor(plugin, plugin.getConfig().getInt("reward_commands.max_per_tick", 20),
+            plugin.getConfig().getStringList("reward_commands.coalesce"));
+        loadRewards();
+        loadTriggers();
     }
 
-    // Handle triggered rewards
-    public void handleTriggers(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, String serviceName) {
-
-        // get vote counts
-        int playerVoteCount = databaseManager.getPlayerVoteCount(tgt_playerEnv);
-        int serverVoteCount = databaseManager.getServerVoteCount();
-
-        // load triggers
-        ConfigurationSection triggerTable = configManager.getTriggerTable();
-
-        // evaluate and execute triggers
-        for (String triggerKey : triggerTable.getKeys(false)) {
-            ConfigurationSection trigger = triggerTable.getConfigurationSection(triggerKey);
-            // logger.info("evaluating trigger " + triggerKey);
+    public RewardDeliveryScheduler getRewardDelivery() {
+        return rewardDelivery;
+    }
 
-            assert trigger != null;
+    public RewardCommandExecutor getRewardCommands() {
+        return rewardCommands;
+    }
 
-            if (evaluateTrigger(trigger, playerVoteCount, serverVoteCount)) {
-                // logger.info("executing trigger " + triggerKey);
-                executeTrigger(playerEnv, tgt_playerEnv, trigger, playerVoteCount, serviceName);
+    // Build the rewards in reward_items.yml, at startup and on /vote reload
+    public void loadRewards() {
+        rewardTable = RewardTable.compile(configManager.getRewardItemTable(), headDatabase != null, logger);
+        if (headDatabase != null) {
+            Set<String> headIds = rewardTable.headIds();
+            if (!headIds.isEmpty()) {
+                logger.info("Cached " + headDatabase.prewarm(headIds) + " of " + headIds.size() + " reward heads");
             }
         }
     }
 
-    private boolean evaluateTrigger(ConfigurationSection trigger, int playerVoteCount, int serverVoteCount) {
-        // String triggerName = trigger.getString("trigger_name");
-        String triggerUser = trigger.getString("trigger_user");
-        int triggerThreshold = trigger.getInt("trigger_threshold", 0);
-        boolean triggerRepeat = trigger.getBoolean("trigger_repeat", true);
-
-        // always fire if threshold is 0
-        if (triggerThreshold == 0) {
-            return true; 
-        }
+    // Read reward_triggers.yml into the trigger index, at startup and on /vote reload
+    public void loadTriggers() {
+        triggerIndex = TriggerIndex.compile(configManager.getTriggerTable(), logger);
+    }
 
-        // fire if threshold / repeat is met
-        assert triggerUser != null;
+    // Find the triggers that fire for the given vote counts (safe to call off the main thread)
+    public List<RewardTrigger> evaluateTriggers(int playerVoteCount, int serverVoteCount) {
+        return triggerIndex.match(playerVoteCount, serverVoteCount);
+    }
 
-        if (triggerUser.equals("player")) {
-            if (triggerRepeat) {
-                return playerVoteCount % triggerThreshold == 0;
-            } else {
-                return playerVoteCount == triggerThreshold;
-            }
-        } else if (triggerUser.equals("server")) {
-            if (triggerRepeat) {
-                return serverVoteCount % triggerThreshold == 0;
-            } else {
-                return serverVoteCount == triggerThreshold;
-            }
+    // Execute triggered rewards (main thread)
+    public void executeTriggers(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, List<RewardTrigger> triggers, int playerVoteCount, String serviceName) {
+        if (triggers == null) {
+            return;
+        }
+        for (RewardTrigger trigger : triggers) {
+            // logger.info("executing trigger " + trigger.key());
+            executeTrigger(playerEnv, tgt_playerEnv, trigger, playerVoteCount, serviceName);
         }
-
-        return false;
     }
 
-    private void executeTrigger(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, ConfigurationSection trigger, int voteCount, String serviceName) {
-        String triggerUser = trigger.getString("trigger_user");
-        List<String> triggerRewards = trigger.getStringList("trigger_rewards");
-        String playerMessage = trigger.getString("trigger_player_message");
-        String broadcastMessage = trigger.getString("trigger_broadcast_message");
-
-        assert triggerUser != null;
+    private void executeTrigger(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, RewardTrigger trigger, int voteCount, String serviceName) {
+        List<String> triggerRewards = trigger.rewards();
+        String playerMessage = trigger.playerMessage();
+        String broadcastMessage = trigger.broadcastMessage();
 
-        if (triggerUser.equals("player")) {
+        if (!trigger.server()) {
 
             // give rewards for this trigger
             for (String rewardName : triggerRewards) {
-                ConfigurationSection reward = configManager.getRewardItemTable().getConfigurationSection(rewardName);
+                Reward reward = rewardTable.get(rewardName);
                 if (reward != null) {
                     this.giveReward(playerEnv, tgt_playerEnv, reward, serviceName);
                 }
@@ -119,34 +109,28 @@ public class RewardManager {
                 tgt_playerEnv.player.sendMessage(formatTriggerMessage(playerMessage, tgt_playerEnv.name, voteCount, serviceName));
             }
 
-        } else if (triggerUser.equals("server")) {
-
-            // get all player uuids
-            List<UUID> allPlayers = databaseManager.getAllPlayersUUID();
-
-            // loop through all players and give rewards
-            for (UUID uuid : allPlayers) {
-
-                // get or create PlayerEnv
-                PlayerEnv svr_playerEnv = playerEnvManager.getPlayerEnv(uuid);
+        } else {
 
-                // give rewards for this trigger
-                for (String rewardName : triggerRewards) {
-                    ConfigurationSection reward = configManager.getRewardItemTable().getConfigurationSection(rewardName);
-                    if (reward != null) {
-                        this.giveReward(playerEnv, svr_playerEnv, reward, serviceName);
-                    }
+            // one grant per reward for every known player, stored in the background
+            List<String> rewardIds = new ArrayList<>();
+            for (String rewardName : triggerRewards) {
+                if (rewardTable.get(rewardName) != null) {
+                    rewardIds.add(rewardName);
                 }
-
-                // send player message for this trigger, if player is online
-                if (svr_playerEnv.player != null) {
-                    svr_playerEnv.player.sendMessage(formatTriggerMessage(playerMessage, svr_playerEnv.name, voteCount, serviceName));
+            }
+            if (!plugin.isEnabled()) {
+                // votes drained at shutdown, online players claim the grants on their next login
+                if (!rewardIds.isEmpty()) {
+                    storeServerRewards(trigger.key(), rewardIds, serviceName);
                 }
+            } else if (!rewardIds.isEmpty()) {
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () ->
+                    storeServerRewards(trigger.key(), rewardIds, serviceName));
+            }
 
-                // close PlayerEnv if player is offline
-                if (svr_playerEnv.player == null) {
-                    playerEnvManager.removePlayerEnv(svr_playerEnv.uuid);
-                }
+            // send player message for this trigger
+            for (Player player : plugin.getServer().getOnlinePlayers()) {
+                player.sendMessage(formatTriggerMessage(playerMessage, player.getName(), voteCount, serviceName));
             }
 
             // send broadcast message for this trigger
@@ -154,145 +138,193 @@ public class RewardManager {
         }
     }
 
-    // Handle manual rewards
-    public void handleRewards(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, String serviceName, String rewardName) {
+    // Store a server trigger's grants (async), then online players claim them the same way
+    // they would on their next login, so nobody gets a grant twice
+    private void storeServerRewards(String triggerName, List<String> rewardIds, String serviceName) {
+        long start = System.currentTimeMillis();
+        databaseManager.addRewardGrants(rewardIds, serviceName);
+        logger.info("Trigger " + triggerName + ": stored " + rewardIds.size() + " reward grants (" + (System.currentTimeMillis() - start) + " ms)");
 
-        // load rewards
-        ConfigurationSection rewardTable = configManager.getRewardItemTable();
+        // stopping, online players claim the grants on their next login
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, this::claimServerRewards);
+    }
 
-        // evaluate and give rewards
-        for (String rewardKey : rewardTable.getKeys(false)) {
-            ConfigurationSection reward = configManager.getRewardItemTable().getConfigurationSection(rewardKey);
+    // Pick the players who are online now (main thread) and claim their grants off it; players
+    // without a PlayerEnv are mid login or logout and claim them on login
+    private void claimServerRewards() {
+        List<PlayerEnv> onlinePlayers = new ArrayList<>();
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            PlayerEnv tgt_playerEnv = playerEnvManager.getPlayerEnv(player.getUniqueId());
+            if (tgt_playerEnv != null && tgt_playerEnv.player != null) {
+                onlinePlayers.add(tgt_playerEnv);
+            }
+        }
+        if (onlinePlayers.isEmpty()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            for (PlayerEnv tgt_playerEnv : onlinePlayers) {
+                claimPendingRewards(tgt_playerEnv);
+            }
+        });
+    }
 
-            // logger.info("looking for " + rewardName + " in " + rewardKey);
-           
-            if (rewardName.equals(rewardKey)) {
-                this.giveReward(playerEnv, tgt_playerEnv, reward, serviceName);
+    // Handle manual rewards
+    public void handleRewards(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, String serviceName, String rewardName) {
+        Reward reward = rewardTable.get(rewardName);
+        if (reward == null) {
+            return;
+        }
+        this.giveReward(playerEnv, tgt_playerEnv, reward, serviceName);
 
-                // send player messages
-                playerEnv.sendMessage(languageManager.getMessage("give_reward_success", 
-                Map.of("player", tgt_playerEnv.name,
-                    "reward", reward.getString("reward_name"))));
+        // send player messages
+        playerEnv.sendMessage(languageManager.getMessage("give_reward_success", 
+        Map.of("player", tgt_playerEnv.name,
+            "reward", reward.name())));
 
-                if (tgt_playerEnv.player != null) {
-                    tgt_playerEnv.sendMessage(languageManager.getMessage("give_reward_success_player",
-                        Map.of("reward", reward.getString("reward_name"))));
-                }
-            } 
-        }  
+        if (tgt_playerEnv.player != null) {
+            tgt_playerEnv.sendMessage(languageManager.getMessage("give_reward_success_player",
+                Map.of("reward", reward.name())));
+        }
     }
 
     // Give reward items to player
-    public void giveReward(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, ConfigurationSection reward, String serviceName) {
+    public void giveReward(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, Reward reward, String serviceName) {
 
         // store offline rewards
         if (tgt_playerEnv.player == null) {
-            databaseManager.addOfflineReward(tgt_playerEnv, reward.getName(), serviceName);
+            storeOfflineReward(tgt_playerEnv, reward.key(), serviceName);
             return;
         }
 
-        // give online rewards
-        List<Map<?, ?>> rewardItems = reward.getMapList("reward_items");
-        boolean isRandomized = reward.getBoolean("reward_randomized");
-        int maxItems = reward.getInt("reward_max_items");
-
-        // create Itemstack array of items
-        List<ItemStack> items = new ArrayList<>();
-        Map<ItemStack, List<String>> commands = new HashMap<>();
-        
-        for (Map<?, ?> rewardItem : rewardItems) {
-            String itemTitle = (String) rewardItem.get("title");
-            // logger.info("itemTitle: " + itemTitle);
-            String itemName = (String) rewardItem.get("item");
-            // logger.info("itemName: " + itemName);
-            int itemCount = (int) rewardItem.get("quantity");
-            // logger.info("itemCount: " + itemCount);
-            List<String> itemLoreList = (List<String>) rewardItem.get("lore");
-            // logger.info("itemLoreList: " + itemLoreList);
-            List<String> itemCommandList = (List<String>) rewardItem.get("commands");
-            // logger.info("itemCommandList: " + itemCommandList);
-            ItemStack item;
+        // items and commands go out within the per-tick delivery budget
+        rewardDelivery.submit(() -> deliverReward(tgt_playerEnv, reward, serviceName));
+    }
+
+    // Put a reward's items in the player's inventory and run its commands (main thread, from the delivery queue)
+    private void deliverReward(PlayerEnv tgt_playerEnv, Reward reward, String serviceName) {
+
+        // logged off while the reward was queued, keep it for their next login
+        if (tgt_playerEnv.player == null || !tgt_playerEnv.player.isOnline()) {
+            storeOfflineReward(tgt_playerEnv, reward.key(), serviceName);
+            return;
+        }
 
-            // add item block
-            if (itemName.startsWith("hdb-") && headDatabaseAPI != null) {
-                String headID = itemName.split("-")[1];
-                item = getHeadItem(headID);
+        // randomize items and trim to max items allowed
+        List<RewardItem> rewardItems = reward.items();
+        int maxItems = reward.maxItems();
+        if (reward.randomized() && maxItems > 0 && maxItems < rewardItems.size()) {
+            rewardItems = new ArrayList<>(rewardItems);
+            while (rewardItems.size() > maxItems) {
+                rewardItems.remove(random.nextInt(rewardItems.size()));
+            }
+        }
+
+        // add to player inventory and execute commands
+        for (RewardItem rewardItem : rewardItems) {
+            ItemStack item;
+            if (rewardItem.headId() != null) {
+                item = getHeadItem(rewardItem.headId());
                 if (item == null) {
-                    logger.warning("Head with ID " + headID + " could not be found!");
+                    logger.warning("Head with ID " + rewardItem.headId() + " could not be found!");
                     continue;
                 }
-                item.setAmount(itemCount);
+                item.setAmount(rewardItem.quantity());
+                RewardTable.applyMeta(item, rewardItem.title(), rewardItem.lore());
             } else {
-                item = new ItemStack(Material.valueOf(itemName.toUpperCase()), itemCount);
-                // logger.info("added itemName: " + itemName);
+                item = rewardItem.prototype().clone();
             }
+            tgt_playerEnv.player.getInventory().addItem(item);
 
-            // add item meta
-            ItemMeta meta = item.getItemMeta();
-            // logger.info("meta: " + meta);
-            
-            if (meta != null) {
-                if (itemTitle != null) {
-                    meta.setDisplayName(itemTitle);
-                }
-                if (itemLoreList != null) {
-                    meta.setLore(itemLoreList);
+            if (rewardItem.commands() != null) {
+                for (CommandTemplate command : rewardItem.commands()) {
+                    rewardCommands.submit(command, tgt_playerEnv.name);
                 }
-                item.setItemMeta(meta);
-            }
-            // logger.info("added item meta");
-
-            // add item commands
-            if (itemCommandList != null && !itemCommandList.isEmpty()) {
-                commands.put(item, itemCommandList);
-                // logger.info("added itemcommandList " + itemCommandList);
             }
-            
-            // add finished item to array
-            items.add(item);
-            // logger.info("added item to array " + item);
         }
+    }
 
-        // randomize Itemstack array and trim to max items allowed
-        if (isRandomized && maxItems > 0 && maxItems < items.size()) {
-            while (items.size() > maxItems) {
-                ItemStack removedItem = items.remove(random.nextInt(items.size()));
-                commands.remove(removedItem);
-                // logger.info("removed item from array " + removedItem);
-            }
+    // Keep a reward for the player's next login, written off the main thread unless the plugin
+    // is stopping and async tasks won't run any more
+    private void storeOfflineReward(PlayerEnv tgt_playerEnv, String rewardId, String serviceName) {
+        if (!plugin.isEnabled()) {
+            databaseManager.addOfflineReward(tgt_playerEnv, rewardId, serviceName);
+            return;
         }
-        // logger.info("completed itemstack");
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () ->
+            databaseManager.addOfflineReward(tgt_playerEnv, rewardId, serviceName));
+    }
 
-        // add to player inventory and execute commands
-        for (ItemStack item : items) {
-            tgt_playerEnv.player.getInventory().addItem(item);
-            // logger.info("added item to player inventory " + item);
+    // Process pending offline rewards: they're loaded and claimed off the main thread, then
+    // handed to the delivery queue on the main thread
+    public void processPendingOfflineRewards(PlayerEnv tgt_playerEnv) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> claimPendingRewards(tgt_playerEnv));
+    }
+
+    // Load and claim a player's pending rewards (async): personal rewards are removed, grants are
+    // claimed by moving the player's watermark past the highest one loaded. Claims hold a lock so
+    // a login and a server trigger can't both load the same grants. Callers pick online players
+    // on the main thread; one who logs off before delivery gets the rewards back as offline rewards.
+    private void claimPendingRewards(PlayerEnv tgt_playerEnv) {
+        List<OfflineReward> claimed = new ArrayList<>();
+
+        synchronized (claimLock) {
+            List<OfflineReward> pendingRewards = databaseManager.getOfflineRewards(tgt_playerEnv);
+            long expireCutoff = rewardsExpireCutoff();
+            long claimedGrant = 0;
+
+            for (OfflineReward pending : pendingRewards) {
+                // the newest grant outlives rewards_expire, claim it without handing it out
+                if (pending.isGrant()) {
+                    claimedGrant = Math.max(claimedGrant, pending.grantId());
+                    if (pending.rewardTime() < expireCutoff) {
+                        continue;
+                    }
+                }
 
-            if (commands.containsKey(item)) {
-                for (String command : commands.get(item)) {
-                        executeConsoleCommand(tgt_playerEnv, command);
-                        // logger.info("executed command " + command);
+                if (rewardTable.get(pending.rewardId()) != null) {
+                    if (!pending.isGrant()) {
+                        databaseManager.removeOfflineReward(tgt_playerEnv, pending.rewardId());
+                    }
+                    claimed.add(pending);
                 }
             }
+
+            if (claimedGrant > 0) {
+                databaseManager.claimRewardGrants(tgt_playerEnv, claimedGrant);
+            }
         }
-    }   
 
-    // Process pending offline rewards
-    public void processPendingOfflineRewards(PlayerEnv tgt_playerEnv) {
+        if (claimed.isEmpty()) {
+            return;
+        }
+        if (!plugin.isEnabled()) {
+            // stopping before the main thread could deliver them, keep them for the next login
+            for (OfflineReward pending : claimed) {
+                databaseManager.addOfflineReward(tgt_playerEnv, pending.rewardId(), pending.serviceName());
+            }
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> deliverPendingRewards(tgt_playerEnv, claimed));
+    }
 
-        List<Map<String, Object>> pendingRewards = databaseManager.getOfflineRewards(tgt_playerEnv);
-        
-        for (Map<String, Object> rewardData : pendingRewards) {
-            String rewardId = (String) rewardData.get("reward_id");
-            String serviceName = (String) rewardData.get("vote_service");
-            ConfigurationSection reward = configManager.getRewardItemTable().getConfigurationSection(rewardId);
-            
-            if (reward != null) {
-                giveReward(tgt_playerEnv, tgt_playerEnv, reward, serviceName);
-                databaseManager.removeOfflineReward(tgt_playerEnv, rewardId);
-                
+    // Queue claimed rewards for delivery (main thread), a player who logged off in between gets
+    // them back as offline rewards
+    private void deliverPendingRewards(PlayerEnv tgt_playerEnv, List<OfflineReward> claimed) {
+        for (OfflineReward pending : claimed) {
+            Reward reward = rewardTable.get(pending.rewardId());
+            if (reward == null) {
+                // dropped from reward_items.yml by a reload since the claim
+                continue;
+            }
+            rewardDelivery.submit(() -> deliverReward(tgt_playerEnv, reward, pending.serviceName()));
+
+            if (tgt_playerEnv.player != null && tgt_playerEnv.player.isOnline()) {
                 String message = languageManager.getMessage("give_reward_success_player",
-                    Map.of("reward", reward.getString("reward_name")));
+                    Map.of("reward", reward.name()));
                 tgt_playerEnv.player.sendMessage(message);
             }
         }
@@ -332,9 +364,9 @@ public class RewardManager {
 
     // List rewards
     public void listRewards(PlayerEnv playerEnv) {
-        ConfigurationSection rewardTable = configManager.getRewardItemTable();
+        ConfigurationSection rewardConfig = configManager.getRewardItemTable();
 
-        if (rewardTable == null && playerEnv.player != null) {
+        if (rewardConfig == null && playerEnv.player != null) {
             playerEnv.sendMessage(languageManager.getMessage("reward_list_error"));
             return;
         }
@@ -343,10 +375,10 @@ public class RewardManager {
             playerEnv.sendMessage(languageManager.getMessage("reward_list_header"));
         }
 
-        assert rewardTable != null;
+        assert rewardConfig != null;
 
-        for (String rewardKey : rewardTable.getKeys(false)) {
-            ConfigurationSection reward = rewardTable.getConfigurationSection(rewardKey);
+        for (String rewardKey : rewardConfig.getKeys(false)) {
+            ConfigurationSection reward = rewardConfig.getConfigurationSection(rewardKey);
             if (reward != null && playerEnv.player != null) {
                 playerEnv.sendMessage(languageManager.getMessage("reward_list_item", 
                     Map.of("key", rewardKey)));
@@ -354,27 +386,22 @@ public class RewardManager {
         }
     }
 
-    // Expire rewards
-    public void expireRewards() {
-        YamlConfiguration mainConfig = configManager.getConfig("config");
-        long rewardsExpire = (long)mainConfig.getInt("rewards_expire");
-        long cutoffTime = System.currentTimeMillis() - (rewardsExpire * 24 * 60 * 60 * 1000); // in ms
-        databaseManager.expireRewards(cutoffTime);
+    // Expire rewards, returns the number of offline rewards and grants deleted
+    public long expireRewards() {
+        return databaseManager.expireRewards(rewardsExpireCutoff());
     }
 
-    // Execute console command
-    private void executeConsoleCommand(PlayerEnv tgt_playerEnv, String itemCommand) {
-        String command = itemCommand.replace("{player}", tgt_playerEnv.name);
-        ConsoleCommandSender console = Bukkit.getServer().getConsoleSender();
-        Bukkit.dispatchCommand(console, command);
+    // Rewards given before this time have expired
+    private long rewardsExpireCutoff() {
+        YamlConfiguration mainConfig = configManager.getConfig("config");
+        long rewardsExpire = (long)mainConfig.getInt("rewards_expire");
+        return System.currentTimeMillis() - (rewardsExpire * 24 * 60 * 60 * 1000); // in ms
     }
 
     private ItemStack getHeadItem(String headId) {
         try {
-            if (headDatabaseAPI != null) {
-                Class<?> apiClass = Class.forName("me.arcaniax.hdb.api.HeadDatabaseAPI");
-                return (ItemStack) apiClass.getMethod("getItemHead", String.class)
-                    .invoke(headDatabaseAPI, headId);
+            if (headDatabase != null) {
+                return headDatabase.getHead(headId);
             }
             // Return fallback item if HeadDatabase isn't available
             return new ItemStack(Material.PLAYER_HEAD);
@@ -383,4 +410,4 @@ public class RewardManager {
             return new ItemStack(Material.PLAYER_HEAD);
         }
     }
-}
\ No newline at end of file
+}
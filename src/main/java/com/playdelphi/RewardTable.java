@@ -0,0 +1,150 @@
+package com.playdelphi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+/**
+ * RewardTable holds the rewards from reward_items.yml, built once when the plugin loads or
+ * reloads.
+ *
+ * Each item becomes a finished ItemStack with its amount, title and lore already set, so
+ * giving a reward only clones it. Items that could never be given (an unknown material,
+ * a missing quantity, a Head Database ID without Head Database) are left out with a
+ * warning at load time instead of failing partway through a grant.
+ */
+
+public class RewardTable {
+    private final Map<String, Reward> rewards;
+
+    private RewardTable(Map<String, Reward> rewards) {
+        this.rewards = Collections.unmodifiableMap(rewards);
+    }
+
+    // Build every reward in the table; heads says whether Head Database items can be given
+    public static RewardTable compile(ConfigurationSection rewardTable, boolean heads, Logger logger) {
+        Map<String, Reward> rewards = new LinkedHashMap<>();
+        if (rewardTable == null) {
+            return new RewardTable(rewards);
+        }
+        for (String rewardKey : rewardTable.getKeys(false)) {
+            ConfigurationSection reward = rewardTable.getConfigurationSection(rewardKey);
+            if (reward == null) {
+                continue;
+            }
+            List<RewardItem> items = new ArrayList<>();
+            for (Map<?, ?> rewardItem : reward.getMapList("reward_items")) {
+                RewardItem item = compileItem(rewardKey, rewardItem, heads, logger);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            rewards.put(rewardKey, new Reward(rewardKey, reward.getString("reward_name"), List.copyOf(items),
+                reward.getBoolean("reward_randomized"), reward.getInt("reward_max_items")));
+        }
+        return new RewardTable(rewards);
+    }
+
+    // One reward_items entry, null if it can't be given
+    private static RewardItem compileItem(String rewardKey, Map<?, ?> rewardItem, boolean heads, Logger logger) {
+        Object itemName = rewardItem.get("item");
+        Object quantity = rewardItem.get("quantity");
+        if (!(itemName instanceof String) || ((String) itemName).isBlank()) {
+            logger.warning("Reward " + rewardKey + " has an item without an item name, skipping it");
+            return null;
+        }
+        if (!(quantity instanceof Integer) || (Integer) quantity < 1) {
+            logger.warning("Reward " + rewardKey + " item " + itemName + " needs a quantity greater than 0, skipping it");
+            return null;
+        }
+        String title = rewardItem.get("title") instanceof String text ? text : null;
+        List<String> lore = stringList(rewardItem.get("lore"));
+        List<CommandTemplate> commands = commandTemplates(rewardItem.get("commands"));
+        int itemCount = (Integer) quantity;
+
+        String name = (String) itemName;
+        if (name.startsWith("hdb-")) {
+            if (!heads) {
+                logger.warning("Reward " + rewardKey + " item " + name + " needs Head Database, skipping it");
+                return null;
+            }
+            return new RewardItem(null, name.substring(4), itemCount, title, lore, commands);
+        }
+
+        Material material = Material.matchMaterial(name);
+        if (material == null || (!material.isItem() && !material.isAir())) {
+            logger.warning("Reward " + rewardKey + " has unknown item " + name + ", skipping it");
+            return null;
+        }
+        ItemStack prototype = new ItemStack(material, itemCount);
+        applyMeta(prototype, title, lore);
+        return new RewardItem(prototype, null, itemCount, title, lore, commands);
+    }
+
+    // Set an item's title and lore, if it can have them (air can't)
+    static void applyMeta(ItemStack item, String title, List<String> lore) {
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            if (title != null) {
+                meta.setDisplayName(title);
+            }
+            if (lore != null) {
+                meta.setLore(lore);
+            }
+            item.setItemMeta(meta);
+        }
+    }
+
+    private static List<String> stringList(Object value) {
+        if (!(value instanceof List<?> list)) {
+            return null;
+        }
+        List<String> strings = new ArrayList<>(list.size());
+        for (Object entry : list) {
+            strings.add(String.valueOf(entry));
+        }
+        return List.copyOf(strings);
+    }
+
+    public Reward get(String rewardKey) {
+        return rewards.get(rewardKey);
+    }
+
+    private static List<CommandTemplate> commandTemplates(Object value) {
+        List<String> commands = stringList(value);
+        if (commands == null || commands.isEmpty()) {
+            return null;
+        }
+        List<CommandTemplate> templates = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            templates.add(new CommandTemplate(command));
+        }
+        return List.copyOf(templates);
+    }
+
+    // Head Database IDs used by any reward
+    public Set<String> headIds() {
+        Set<String> headIds = new LinkedHashSet<>();
+        for (Reward reward : rewards.values()) {
+            for (RewardItem item : reward.items()) {
+                if (item.headId() != null) {
+                    headIds.add(item.headId());
+                }
+            }
+        }
+        return headIds;
+    }
+
+    public Set<String> keys() {
+        return rewards.keySet();
+    }
+}
@@ -0,0 +1,9 @@
+package com.playdelphi;
+
+import java.util.List;
+
+// A trigger from reward_triggers.yml, read once when the triggers are loaded; order is its
+// position in the file, which is the order fired triggers are run in
+public record RewardTrigger(String key, int order, boolean server, int threshold, boolean repeat, List<String> rewards,
+                            String playerMessage, String broadcastMessage) {
+}
@@ -0,0 +1,292 @@
+package com.playdelphi;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * SchemaMigrator applies the versioned migrations listed in database.yml.
+ *
+ * Applied versions are kept in the schema_version table. Pending steps run in version
+ * order at startup, except steps marked background, which run afterwards on a separate
+ * thread so large tables don't hold up server startup (so no startup step may rely on a
+ * background one). A background step that fails doesn't stop the rest. A step is recorded
+ * only after all its statements succeed, and steps are written to be safe to repeat, so an
+ * interrupted or failed migration is tried again on the next start.
+ *
+ * A step can declare a feature it provides, which the store checks (isProvided) before
+ * relying on the schema it adds.
+ */
+
+public class SchemaMigrator {
+    private static final int BASELINE_VERSION = 1; // tables created from database.yml
+    private static final long BATCH_PAUSE_MS = 50; // gap between batches so votes can be written
+    private static final int STATEMENT_BUSY_TIMEOUT_MS = 60000; // SQLite: wait for the vote writer's batch
+
+    private final Logger logger;
+    private final HikariDataSource dataSource;
+    private final boolean isMySQL;
+    private final String tablePrefix;
+    private final String versionTable;
+    private final int batchSize;
+    private final List<Step> pending = new ArrayList<>();
+    private final Set<String> provided = ConcurrentHashMap.newKeySet();
+    private Thread backgroundThread;
+    private volatile boolean running = true;
+
+    // A migration step from database.yml
+    private static class Step {
+        final int version;
+        final String description;
+        final boolean background;
+        final boolean batch;
+        final String provides;
+        final List<String> statements;
+
+        Step(int version, String description, boolean background, boolean batch, String provides, List<String> statements) {
+            this.version = version;
+            this.description = description;
+            this.background = background;
+            this.batch = batch;
+            this.provides = provides;
+            this.statements = statements;
+        }
+    }
+
+    // Constructor
+    public SchemaMigrator(Logger logger, HikariDataSource dataSource, boolean isMySQL, String tablePrefix, int batchSize) {
+        this.logger = logger;
+        this.dataSource = dataSource;
+        this.isMySQL = isMySQL;
+        this.tablePrefix = tablePrefix;
+        this.versionTable = tablePrefix + "_schema_version";
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    // Apply pending migrations, starting background steps on their own thread
+    public void migrate(FileConfiguration databaseConfig) {
+        Set<Integer> applied;
+        try {
+            applied = getAppliedVersions();
+        } catch (SQLException e) {
+            logger.severe("Error reading schema version, migrations skipped: " + e.getMessage());
+            return;
+        }
+
+        ConfigurationSection migrationsSection = databaseConfig.getConfigurationSection("migrations");
+        if (migrationsSection != null) {
+            for (String key : migrationsSection.getKeys(false)) {
+                ConfigurationSection stepSection = migrationsSection.getConfigurationSection(key);
+                int version = Integer.parseInt(key);
+                if (stepSection == null) continue;
+                if (applied.contains(version)) {
+                    if (stepSection.getString("provides") != null) {
+                        provided.add(stepSection.getString("provides"));
+                    }
+                    continue;
+                }
+                pending.add(new Step(version, stepSection.getString("description", ""), stepSection.getBoolean("background", false),
+                    stepSection.getBoolean("batch", false), stepSection.getString("provides"), stepSection.getStringList(isMySQL ? "mysql" : "sqlite")));
+            }
+        }
+        pending.sort((a, b) -> Integer.compare(a.version, b.version));
+
+        for (Step step : List.copyOf(pending)) {
+            if (step.background) {
+                continue;
+            }
+            pending.remove(step);
+            if (!apply(step)) {
+                pending.clear();
+                return;
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            logger.info("Running " + pending.size() + " database migration(s) in the background");
+            backgroundThread = new Thread(this::runBackground, "DelphiVote-migrations");
+            backgroundThread.setDaemon(true);
+            backgroundThread.start();
+        }
+    }
+
+    // Stop background migrations, the current step resumes on the next start
+    public void shutdown() {
+        running = false;
+        if (backgroundThread != null) {
+            try {
+                backgroundThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // True once the step providing a feature has been applied
+    public boolean isProvided(String feature) {
+        return provided.contains(feature);
+    }
+
+    // True while migrations are still waiting to run
+    public boolean isPending() {
+        return backgroundThread != null && backgroundThread.isAlive();
+    }
+
+    private void runBackground() {
+        int failed = 0;
+        for (Step step : pending) {
+            if (!running) {
+                return;
+            }
+            if (!apply(step)) {
+                if (!running) {
+                    return;
+                }
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            logger.severe(failed + " database migration(s) were not applied, they'll be tried again on the next start");
+        }
+    }
+
+    // Run one step and record it, returns false if it failed
+    private boolean apply(Step step) {
+        long start = System.currentTimeMillis();
+        try {
+            for (String sql : step.statements) {
+                sql = sql.replace("{prefix}", tablePrefix).replace("{batch_size}", String.valueOf(batchSize));
+                if (step.batch) {
+                    runBatched(sql, step);
+                } else {
+                    try (Connection conn = getStatementConnection();
+                         Statement stmt = conn.createStatement()) {
+                        execute(stmt, sql);
+                    }
+                }
+                if (!running) {
+                    return false;
+                }
+            }
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + versionTable + " (version, description, applied_ts) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+                pstmt.setInt(1, step.version);
+                pstmt.setString(2, step.description);
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            logger.severe("Database migration " + step.version + " (" + step.description + ") failed: " + e.getMessage());
+            return false;
+        }
+        if (step.provides != null) {
+            provided.add(step.provides);
+        }
+        logger.info("Applied database migration " + step.version + ": " + step.description + " (" + (System.currentTimeMillis() - start) + " ms)");
+        return true;
+    }
+
+    // Connection for a statement that runs in one go (index builds, column changes). SQLite's
+    // pool has the only writer connection, which vote batches wait on no longer than the pool
+    // timeout, so these get a connection of their own and SQLite's file lock decides who waits.
+    private Connection getStatementConnection() throws SQLException {
+        if (isMySQL) {
+            return dataSource.getConnection();
+        }
+        Connection conn = DriverManager.getConnection(dataSource.getJdbcUrl());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + STATEMENT_BUSY_TIMEOUT_MS);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    // Repeat a statement until it changes no rows, releasing the connection between batches
+    private void runBatched(String sql, Step step) throws SQLException {
+        long total = 0;
+        int batches = 0;
+        int rows;
+        do {
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                rows = executeUpdate(stmt, sql);
+            }
+            total += rows;
+            if (++batches % 20 == 0) {
+                logger.info("Database migration " + step.version + ": " + total + " rows so far");
+            }
+            try {
+                Thread.sleep(BATCH_PAUSE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        } while (rows > 0 && running);
+    }
+
+    private void execute(Statement stmt, String sql) throws SQLException {
+        try {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            if (!isAlreadyApplied(e, sql)) {
+                throw e;
+            }
+        }
+    }
+
+    // Rows changed, DDL in a batched step (such as dropping an index) runs once and changes none
+    private int executeUpdate(Statement stmt, String sql) throws SQLException {
+        try {
+            return stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            if (!isAlreadyApplied(e, sql)) {
+                throw e;
+            }
+            return 0;
+        }
+    }
+
+    // neither database has IF NOT EXISTS for columns, nor MySQL for indexes
+    // MySQL: 1060 duplicate column, 1061 duplicate index, 1091 nothing to drop
+    private boolean isAlreadyApplied(SQLException e, String sql) {
+        if (isMySQL) {
+            return e.getErrorCode() == 1060 || e.getErrorCode() == 1061 || e.getErrorCode() == 1091;
+        }
+        String message = e.getMessage();
+        return message != null && (message.contains("duplicate column name")
+            || sql.contains("DROP COLUMN") && message.contains("no such column"));
+    }
+
+    // Create the version table if needed and read the applied versions
+    private Set<Integer> getAppliedVersions() throws SQLException {
+        Set<Integer> applied = new HashSet<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + versionTable + " (version INTEGER PRIMARY KEY, description VARCHAR(255) NOT NULL, applied_ts TIMESTAMP NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery("SELECT version FROM " + versionTable)) {
+                while (rs.next()) {
+                    applied.add(rs.getInt(1));
+                }
+            }
+            if (applied.isEmpty()) {
+                // tables from database.yml already exist, record them as the baseline
+                stmt.executeUpdate("INSERT INTO " + versionTable + " (version, description, applied_ts) VALUES (" + BASELINE_VERSION + ", 'Baseline tables', CURRENT_TIMESTAMP)");
+                applied.add(BASELINE_VERSION);
+            }
+        }
+        return applied;
+    }
+}
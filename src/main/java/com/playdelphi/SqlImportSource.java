@@ -0,0 +1,192 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.ImportException;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * SqlImportSource reads vote totals from another plugin's player table, in a SQLite file
+ * (opened read only) or a MySQL database given as a jdbc: URL.
+ *
+ * Rows are read a page at a time in UUID order, so the position is the last UUID read
+ * and a resumed import starts on the row after it.
+ */
+
+public class SqlImportSource implements ImportSource {
+    private static final int PAGE_SIZE = 5000;
+
+    private final String url;
+    private final String serviceName;
+    private final String table;
+    private final String selectSql;
+    private final boolean lastVotesList;
+    private Connection conn;
+    private PreparedStatement pstmt;
+    private ResultSet rs;
+    private String lastUuid = "";
+    private int pageRows;
+    private boolean finished;
+    private long skipped;
+
+    // VotingPlugin keeps a player's total in AllTimeTotal and their last vote on each site in
+    // LastVotes as site//millis entries joined by %line%
+    public static SqlImportSource votingPlugin(String location, String table) throws ImportException {
+        String url = jdbcUrl(location);
+        String defaultTable = url.startsWith("jdbc:sqlite:") ? "Users" : "VotingPlugin_Users";
+        return new SqlImportSource(url, "VotingPlugin", table != null ? table : defaultTable, "uuid", "PlayerName", "AllTimeTotal", "LastVotes", true);
+    }
+
+    // SuperbVote keeps one row per player with their total and the time of their last vote
+    public static SqlImportSource superbVote(String location, String table) throws ImportException {
+        return new SqlImportSource(jdbcUrl(location), "SuperbVote", table != null ? table : "votes", "uuid", "last_name", "votes", "last_vote", false);
+    }
+
+    private SqlImportSource(String url, String serviceName, String table, String uuidColumn, String nameColumn, String votesColumn,
+                            String lastVoteColumn, boolean lastVotesList) throws ImportException {
+        if (!table.matches("[A-Za-z0-9_]+")) {
+            throw new ImportException("Invalid table name '" + table + "'");
+        }
+        this.url = url;
+        this.serviceName = serviceName;
+        this.table = table;
+        this.lastVotesList = lastVotesList;
+        this.selectSql = "SELECT " + uuidColumn + ", " + nameColumn + ", " + votesColumn + ", " + lastVoteColumn + " FROM " + table
+            + " WHERE " + uuidColumn + " > ? ORDER BY " + uuidColumn + " LIMIT ?";
+    }
+
+    // A jdbc: URL as given, anything else is a SQLite file
+    private static String jdbcUrl(String location) throws ImportException {
+        if (location.startsWith("jdbc:")) {
+            return location;
+        }
+        File file = new File(location);
+        if (!file.isFile()) {
+            throw new ImportException("No database file at " + file.getAbsolutePath());
+        }
+        return "jdbc:sqlite:" + file.getAbsolutePath();
+    }
+
+    @Override
+    public boolean singleVotes() {
+        return false;
+    }
+
+    @Override
+    public void open(String position) throws ImportException {
+        lastUuid = position == null ? "" : position;
+        try {
+            if (url.startsWith("jdbc:sqlite:")) {
+                SQLiteConfig sqliteConfig = new SQLiteConfig();
+                sqliteConfig.setReadOnly(true);
+                conn = DriverManager.getConnection(url, sqliteConfig.toProperties());
+            } else {
+                conn = DriverManager.getConnection(url);
+            }
+            pstmt = conn.prepareStatement(selectSql);
+        } catch (SQLException e) {
+            throw new ImportException("Error opening " + table + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ImportedVote next() throws ImportException {
+        try {
+            while (true) {
+                if (rs == null) {
+                    if (finished) {
+                        return null;
+                    }
+                    pstmt.setString(1, lastUuid);
+                    pstmt.setInt(2, PAGE_SIZE);
+                    rs = pstmt.executeQuery();
+                    pageRows = 0;
+                }
+                if (!rs.next()) {
+                    rs.close();
+                    rs = null;
+                    finished = pageRows < PAGE_SIZE;
+                    continue;
+                }
+                pageRows++;
+                lastUuid = rs.getString(1);
+                ImportedVote vote = readRow();
+                if (vote != null) {
+                    return vote;
+                }
+                skipped++;
+            }
+        } catch (SQLException e) {
+            throw new ImportException("Error reading " + table + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The current row as a vote total, null if it has no valid UUID or no votes
+    private ImportedVote readRow() throws SQLException {
+        UUID uuid;
+        int votes;
+        try {
+            uuid = UUID.fromString(lastUuid.trim());
+            String total = rs.getString(3);
+            votes = total == null ? 0 : Integer.parseInt(total.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (votes <= 0) {
+            return null;
+        }
+        long lastVote;
+        if (lastVotesList) {
+            lastVote = latestVote(rs.getString(4));
+        } else {
+            Timestamp timestamp = rs.getTimestamp(4);
+            lastVote = timestamp == null ? 0 : timestamp.getTime();
+        }
+        return new ImportedVote(uuid, rs.getString(2), serviceName, lastVote, votes, true);
+    }
+
+    // Latest time in a VotingPlugin LastVotes value, 0 if there's none
+    private static long latestVote(String lastVotes) {
+        long latest = 0;
+        if (lastVotes == null) {
+            return latest;
+        }
+        for (String entry : lastVotes.split("%line%")) {
+            int separator = entry.lastIndexOf("//");
+            if (separator < 0) continue;
+            try {
+                latest = Math.max(latest, Long.parseLong(entry.substring(separator + 2).trim()));
+            } catch (NumberFormatException e) {
+                // not a vote time
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public String position() {
+        return lastUuid;
+    }
+
+    @Override
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            // read only, nothing to lose
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.playdelphi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * TriggerIndex finds the reward triggers a vote fires without looking at the rest.
+ *
+ * Triggers are read from reward_triggers.yml once, when the plugin loads or reloads. For
+ * player and server counts separately, triggers with threshold 0 always fire, one-off
+ * triggers are kept in a map by threshold, and repeating triggers are grouped by their
+ * threshold so each distinct divisor is tested once. A vote costs one map lookup plus
+ * one modulo per distinct repeat threshold, whatever the number of one-off milestones.
+ */
+
+public class TriggerIndex {
+    private static final TriggerIndex EMPTY = new TriggerIndex(List.of());
+
+    private final Counts player;
+    private final Counts server;
+    private final int size;
+
+    // Triggers for one vote count, player or server
+    private static class Counts {
+        private final List<RewardTrigger> always = new ArrayList<>();
+        private final Map<Integer, List<RewardTrigger>> exact = new HashMap<>();
+        private final int[] divisors;
+        private final List<RewardTrigger>[] repeating;
+
+        @SuppressWarnings("unchecked")
+        Counts(List<RewardTrigger> triggers) {
+            Map<Integer, List<RewardTrigger>> byDivisor = new TreeMap<>();
+            for (RewardTrigger trigger : triggers) {
+                if (trigger.threshold() == 0) {
+                    always.add(trigger);
+                } else if (trigger.repeat()) {
+                    byDivisor.computeIfAbsent(trigger.threshold(), threshold -> new ArrayList<>()).add(trigger);
+                } else {
+                    exact.computeIfAbsent(trigger.threshold(), threshold -> new ArrayList<>()).add(trigger);
+                }
+            }
+            divisors = new int[byDivisor.size()];
+            repeating = new List[byDivisor.size()];
+            int i = 0;
+            for (Map.Entry<Integer, List<RewardTrigger>> entry : byDivisor.entrySet()) {
+                divisors[i] = entry.getKey();
+                repeating[i++] = List.copyOf(entry.getValue());
+            }
+            exact.replaceAll((threshold, list) -> List.copyOf(list));
+        }
+
+        void match(int voteCount, List<RewardTrigger> fired) {
+            fired.addAll(always);
+            List<RewardTrigger> milestone = exact.get(voteCount);
+            if (milestone != null) {
+                fired.addAll(milestone);
+            }
+            for (int i = 0; i < divisors.length; i++) {
+                if (voteCount % divisors[i] == 0) {
+                    fired.addAll(repeating[i]);
+                }
+            }
+        }
+    }
+
+    private TriggerIndex(List<RewardTrigger> triggers) {
+        List<RewardTrigger> playerTriggers = new ArrayList<>();
+        List<RewardTrigger> serverTriggers = new ArrayList<>();
+        for (RewardTrigger trigger : triggers) {
+            (trigger.server() ? serverTriggers : playerTriggers).add(trigger);
+        }
+        this.player = new Counts(playerTriggers);
+        this.server = new Counts(serverTriggers);
+        this.size = triggers.size();
+    }
+
+    // Read every trigger in the table, skipping (with a warning) any that could never fire
+    public static TriggerIndex compile(ConfigurationSection triggerTable, Logger logger) {
+        if (triggerTable == null) {
+            return EMPTY;
+        }
+        List<RewardTrigger> triggers = new ArrayList<>();
+        for (String triggerKey : triggerTable.getKeys(false)) {
+            ConfigurationSection trigger = triggerTable.getConfigurationSection(triggerKey);
+            if (trigger == null) {
+                continue;
+            }
+            String triggerUser = trigger.getString("trigger_user");
+            int triggerThreshold = trigger.getInt("trigger_threshold", 0);
+            if (!"player".equals(triggerUser) && !"server".equals(triggerUser)) {
+                logger.warning("Trigger " + triggerKey + " has trigger_user '" + triggerUser + "', must be player or server, skipping it");
+                continue;
+            }
+            if (triggerThreshold < 0) {
+                logger.warning("Trigger " + triggerKey + " has a negative trigger_threshold, skipping it");
+                continue;
+            }
+            triggers.add(new RewardTrigger(triggerKey, triggers.size(), triggerUser.equals("server"), triggerThreshold,
+                trigger.getBoolean("trigger_repeat", true), List.copyOf(trigger.getStringList("trigger_rewards")),
+                trigger.getString("trigger_player_message"), trigger.getString("trigger_broadcast_message")));
+        }
+        return new TriggerIndex(triggers);
+    }
+
+    // Triggers fired by these vote counts, in the order they appear in reward_triggers.yml
+    public List<RewardTrigger> match(int playerVoteCount, int serverVoteCount) {
+        List<RewardTrigger> fired = new ArrayList<>();
+        player.match(playerVoteCount, fired);
+        server.match(serverVoteCount, fired);
+        if (fired.size() > 1) {
+            fired.sort(Comparator.comparingInt(RewardTrigger::order));
+        }
+        return fired;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,177 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.PlayerNotFoundException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+/**
+ * UUIDResolver turns player names into UUIDs, checking the cheapest source first:
+ * 1. players currently online
+ * 2. a bounded in-memory cache (LRU with expiry), including recent "not found" answers
+ * 3. the players table
+ * 4. the Mojang API (UtilsManager.mojangUUIDLookup)
+ *
+ * Only confirmed "not found" answers are cached negatively; network errors are not
+ * cached so the next lookup tries again.
+ */
+
+public class UUIDResolver {
+    private final Logger logger;
+    private final VoteStore voteStore;
+    private final UtilsManager utilsManager;
+    private final Map<String, UUID> onlinePlayers = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry> cache;
+    private final long cacheMillis;
+    private final long notFoundMillis;
+
+    // stats
+    private final AtomicLong onlineHits = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong notFoundHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong networkLookups = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong networkNanos = new AtomicLong();
+
+    // Cached lookup result, uuid is null for players that don't exist
+    private static class CacheEntry {
+        final UUID uuid;
+        final long expires;
+
+        CacheEntry(UUID uuid, long expires) {
+            this.uuid = uuid;
+            this.expires = expires;
+        }
+    }
+
+    // Constructor
+    public UUIDResolver(DelphiVote plugin) {
+        this(plugin.getConfigManager().getConfig("config"), plugin.getLogger(), plugin.getDatabaseManager().getVoteStore(), plugin.getUtilsManager());
+    }
+
+    // Constructor for tests that run without a server
+    UUIDResolver(YamlConfiguration mainConfig, Logger logger, VoteStore voteStore, UtilsManager utilsManager) {
+        this.logger = logger;
+        this.voteStore = voteStore;
+        this.utilsManager = utilsManager;
+
+        int cacheSize = mainConfig.getInt("uuid_lookup.cache_size", 10000);
+        this.cacheMillis = mainConfig.getLong("uuid_lookup.cache_minutes", 60) * 60 * 1000;
+        this.notFoundMillis = mainConfig.getLong("uuid_lookup.not_found_minutes", 5) * 60 * 1000;
+
+        // access ordered map, evicts the least recently used entry when full
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // Resolve a player name to a UUID
+    public UUID resolve(String playerName) throws PlayerNotFoundException {
+        long start = System.nanoTime();
+        try {
+            return lookup(playerName);
+        } finally {
+            lookupNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private UUID lookup(String playerName) {
+        String key = playerName.toLowerCase();
+
+        // 1. online players
+        UUID uuid = onlinePlayers.get(key);
+        if (uuid != null) {
+            onlineHits.incrementAndGet();
+            return uuid;
+        }
+
+        // 2. cache
+        CacheEntry entry = getCached(key);
+        if (entry != null) {
+            if (entry.uuid == null) {
+                notFoundHits.incrementAndGet();
+                throw new PlayerNotFoundException(playerName);
+            }
+            cacheHits.incrementAndGet();
+            return entry.uuid;
+        }
+
+        // 3. players table, names match regardless of case
+        uuid = voteStore.getPlayerUUID(playerName);
+        if (uuid != null) {
+            databaseHits.incrementAndGet();
+            putCached(key, uuid, cacheMillis);
+            return uuid;
+        }
+
+        // 4. Mojang API
+        networkLookups.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            uuid = utilsManager.mojangUUIDLookup(playerName);
+            putCached(key, uuid, cacheMillis);
+            return uuid;
+        } catch (PlayerNotFoundException e) {
+            putCached(key, null, notFoundMillis);
+            throw e;
+        } finally {
+            networkNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private synchronized CacheEntry getCached(String key) {
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.expires < currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void putCached(String key, UUID uuid, long ttlMillis) {
+        cache.put(key, new CacheEntry(uuid, currentTimeMillis() + ttlMillis));
+    }
+
+    // Clock for cache expiry, tests move it forward
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    // Track online players (login)
+    public void playerOnline(Player player) {
+        onlinePlayers.put(player.getName().toLowerCase(), player.getUniqueId());
+        putCached(player.getName().toLowerCase(), player.getUniqueId(), cacheMillis);
+    }
+
+    // Track online players (quit)
+    public void playerOffline(Player player) {
+        onlinePlayers.remove(player.getName().toLowerCase());
+    }
+
+    // Hit ratio and latency summary
+    public String getStats() {
+        long online = onlineHits.get();
+        long cached = cacheHits.get();
+        long notFound = notFoundHits.get();
+        long database = databaseHits.get();
+        long network = networkLookups.get();
+        long total = online + cached + notFound + database + network;
+        int cacheSize;
+        synchronized (this) {
+            cacheSize = cache.size();
+        }
+        return String.format("UUID lookups: %d total, %.1f%% served locally (online %d, cache %d, cached not found %d, database %d, network %d), avg %.2f ms, avg network %.1f ms, %d cached",
+            total, total == 0 ? 0.0 : 100.0 * (total - network) / total, online, cached, notFound, database, network,
+            total == 0 ? 0.0 : lookupNanos.get() / 1_000_000.0 / total,
+            network == 0 ? 0.0 : networkNanos.get() / 1_000_000.0 / network, cacheSize);
+    }
+}
@@ -1,68 +1,285 @@
 package com.playdelphi;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.playdelphi.exceptions.OtherException;
 import com.playdelphi.exceptions.PlayerNotFoundException;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.UUID;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 public class UtilsManager {
+    private static final int BULK_LIMIT = 10; // max names per Mojang bulk request
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+
     private final Logger logger;
+    private final String bulkProfileUrl;
+    private final Duration readTimeout;
+    private final long batchWindowMs;
+    private final long maxWaitMs;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService lookupExecutor;
+
+    // single-flight: one future per name being looked up
+    private final Map<String, CompletableFuture<UUID>> inFlight = new ConcurrentHashMap<>();
+
+    // names waiting for the next bulk request, guarded by this
+    private LinkedHashSet<String> pendingNames = new LinkedHashSet<>();
+    // names from a bulk request Mojang rejected, looked up one per request, guarded by this
+    private final LinkedHashSet<String> singleNames = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    private long backoffMs;
+
+    // stats
+    private final AtomicLong coalescedLookups = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong bulkNames = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
 
     // Constructor
     public UtilsManager(DelphiVote plugin) {
-        this.logger = plugin.getLogger();
+        this(plugin.getConfigManager().getConfig("config"), plugin.getLogger());
+    }
+
+    // Constructor for tests that run without a server
+    UtilsManager(YamlConfiguration mainConfig, Logger logger) {
+        this.logger = logger;
+        this.bulkProfileUrl = mainConfig.getString("uuid_lookup.bulk_api_url", "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname");
+        this.readTimeout = Duration.ofMillis(mainConfig.getInt("uuid_lookup.read_timeout_ms", 5000));
+        this.batchWindowMs = mainConfig.getLong("uuid_lookup.batch_window_ms", 100);
+        this.maxWaitMs = mainConfig.getLong("uuid_lookup.max_wait_ms", 30000);
+
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(mainConfig.getInt("uuid_lookup.connect_timeout_ms", 3000)))
+            .build();
+        this.lookupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DelphiVote-mojang-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    // Lookup player UUID from Mojang based on player name
+    // Lookup player UUID from Mojang based on player name, waits up to uuid_lookup.max_wait_ms
+    // Throws PlayerNotFoundException if Mojang has no such player, OtherException if the lookup failed
     public UUID mojangUUIDLookup(String playerName)
             throws PlayerNotFoundException {
         try {
+            return mojangUUIDLookupAsync(playerName).get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new OtherException("UUID lookup failed for " + playerName + ": " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            throw new OtherException("UUID lookup timed out for " + playerName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OtherException("UUID lookup interrupted for " + playerName);
+        }
+    }
 
-            URL url = URI.create("https://api.minecraftservices.com/minecraft/profile/lookup/name/" + playerName).toURL();
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
+    // Lookup player UUID from Mojang, concurrent lookups of the same name share one future
+    public CompletableFuture<UUID> mojangUUIDLookupAsync(String playerName) {
+        String key = playerName.toLowerCase();
+        CompletableFuture<UUID> future = new CompletableFuture<>();
+        CompletableFuture<UUID> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedLookups.incrementAndGet();
+            return existing;
+        }
+        future.whenComplete((uuid, error) -> inFlight.remove(key, future));
+        enqueue(key);
+        return future;
+    }
 
-            int responseCode = connection.getResponseCode();
+    // Stop the lookup thread, failing any lookups still waiting
+    public void shutdown() {
+        lookupExecutor.shutdownNow();
+        for (CompletableFuture<UUID> future : inFlight.values()) {
+            future.completeExceptionally(new OtherException("UUID lookup cancelled, plugin is shutting down"));
+        }
+    }
 
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                String inputLine;
-                StringBuilder response = new StringBuilder();
+    // Add a name to the next bulk request
+    private synchronized void enqueue(String key) {
+        pendingNames.add(key);
+        if (backoffMs == 0 && pendingNames.size() >= BULK_LIMIT) {
+            scheduleFlush(0);
+        } else {
+            scheduleFlush(Math.max(batchWindowMs, backoffMs));
+        }
+    }
 
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-                in.close();
+    private synchronized void scheduleFlush(long delayMs) {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        lookupExecutor.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
 
-                JsonObject jsonObject = JsonParser.parseString(response.toString()).getAsJsonObject();
-                String uuidString = jsonObject.get("id").getAsString();
+    // Send one request: a name being looked up on its own, or else a bulk request for up to
+    // BULK_LIMIT pending names (lookup thread)
+    private void flush() {
+        List<String> batch = new ArrayList<>(BULK_LIMIT);
+        synchronized (this) {
+            flushScheduled = false;
+            Iterator<String> names = singleNames.isEmpty() ? pendingNames.iterator() : singleNames.iterator();
+            int limit = singleNames.isEmpty() ? BULK_LIMIT : 1;
+            while (names.hasNext() && batch.size() < limit) {
+                batch.add(names.next());
+                names.remove();
+            }
+        }
+        if (!batch.isEmpty()) {
+            lookupBatch(batch);
+        }
+        synchronized (this) {
+            if (!singleNames.isEmpty()) {
+                // single lookups are spaced like a batch window so they don't come back to back
+                scheduleFlush(Math.max(batchWindowMs, backoffMs));
+            } else if (!pendingNames.isEmpty()) {
+                scheduleFlush(backoffMs);
+            }
+        }
+    }
 
-                // logger.info("Found UUID for player " + playerName + ": " + uuidString);
+    private void lookupBatch(List<String> batch) {
+        JsonArray body = new JsonArray();
+        batch.forEach(body::add);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(bulkProfileUrl))
+            .timeout(readTimeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+            .build();
 
-                // Mojang API returns UUID without hyphens, so we need to add them
-                return UUID.fromString(uuidString.replaceFirst(
-                        "(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)", "$1-$2-$3-$4-$5"
-                ));
-            } else {
-                // This will stack with the general exception below
-                logger.warning("Failed to find UUID for player " + playerName + ". Response code: " + responseCode);
-                // return null;
-                throw new PlayerNotFoundException("Player not found: " + playerName);
+        HttpResponse<String> response;
+        try {
+            bulkRequests.incrementAndGet();
+            bulkNames.addAndGet(batch.size());
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (Exception e) {
+            logger.warning("mojangUUIDLookup Error: " + e.getMessage());
+            failBatch(batch, "UUID lookup failed: " + e.getMessage());
+            return;
+        }
+
+        int responseCode = response.statusCode();
+        if (responseCode == 429) {
+            retryLater(batch, response);
+            return;
+        }
+        if (responseCode == 400 && batch.size() > 1) {
+            // one invalid name fails the whole request, queue the names to be looked up one at a time
+            synchronized (this) {
+                singleNames.addAll(batch);
+                scheduleFlush(Math.max(batchWindowMs, backoffMs));
+            }
+            return;
+        }
+        if (responseCode == 400 || responseCode == 404 || responseCode == 204) {
+            batch.forEach(name -> complete(name, null));
+            return;
+        }
+        if (responseCode != 200) {
+            logger.warning("Failed to look up UUIDs for " + batch + ". Response code: " + responseCode);
+            failBatch(batch, "UUID lookup failed, response code " + responseCode);
+            return;
+        }
+
+        // names missing from the response don't exist
+        Map<String, UUID> found = new HashMap<>();
+        try {
+            for (JsonElement element : JsonParser.parseString(response.body()).getAsJsonArray()) {
+                JsonObject profile = element.getAsJsonObject();
+                found.put(profile.get("name").getAsString().toLowerCase(), parseUUID(profile.get("id").getAsString()));
             }
         } catch (Exception e) {
-            // Required for IO, Protocol, and other exceptions    
             logger.warning("mojangUUIDLookup Error: " + e.getMessage());
-            throw new PlayerNotFoundException(playerName);
+            failBatch(batch, "UUID lookup returned an invalid response");
+            return;
+        }
+        synchronized (this) {
+            backoffMs = backoffMs / 2 < MIN_BACKOFF_MS ? 0 : backoffMs / 2;
         }
-        // return null;  // This will never be reached
+        batch.forEach(name -> complete(name, found.get(name)));
     }
-}
 
+    // Rate limited: put the names back at the front of the queue and back off
+    private void retryLater(List<String> batch, HttpResponse<String> response) {
+        rateLimited.incrementAndGet();
+        long retryAfterMs;
+        try {
+            retryAfterMs = response.headers().firstValueAsLong("Retry-After").orElse(0) * 1000;
+        } catch (NumberFormatException e) {
+            retryAfterMs = 0; // HTTP date form, use our own backoff
+        }
+        synchronized (this) {
+            backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(retryAfterMs, backoffMs == 0 ? MIN_BACKOFF_MS : backoffMs * 2));
+            LinkedHashSet<String> requeued = new LinkedHashSet<>(batch);
+            requeued.addAll(pendingNames);
+            pendingNames = requeued;
+            logger.warning("Mojang API rate limit reached, retrying " + pendingNames.size() + " lookups in " + backoffMs + " ms");
+        }
+    }
 
+    private void complete(String name, UUID uuid) {
+        CompletableFuture<UUID> future = inFlight.get(name);
+        if (future == null) {
+            return;
+        }
+        if (uuid != null) {
+            future.complete(uuid);
+        } else {
+            future.completeExceptionally(new PlayerNotFoundException(name));
+        }
+    }
+
+    private void failBatch(List<String> batch, String message) {
+        for (String name : batch) {
+            CompletableFuture<UUID> future = inFlight.get(name);
+            if (future != null) {
+                future.completeExceptionally(new OtherException(message));
+            }
+        }
+    }
+
+    // Mojang API returns UUID without hyphens, so we need to add them
+    private static UUID parseUUID(String uuidString) {
+        return UUID.fromString(uuidString.replaceFirst(
+                "(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)", "$1-$2-$3-$4-$5"
+        ));
+    }
+
+    // Bulk lookup summary
+    public String getStats() {
+        long requests = bulkRequests.get();
+        synchronized (this) {
+            return String.format("Mojang lookups: %d bulk requests (avg %.1f names), %d coalesced, %d rate limited, backoff %d ms, %d waiting",
+                requests, requests == 0 ? 0.0 : (double) bulkNames.get() / requests, coalescedLookups.get(), rateLimited.get(), backoffMs, pendingNames.size() + singleNames.size());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.StoreException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * VoteBatchWriter is a write-behind buffer in front of the votes table.
+ *
+ * Votes are collected until batch_size votes are waiting or batch_window_ms has passed
+ * since the first one, then written with a single executeBatch in one transaction.
+ * Each caller's future completes, in submission order, once its batch commits.
+ *
+ * Setting batch_size to 1 writes every vote in its own transaction, which is how
+ * the throughput figures from getStats() can be compared with and without batching.
+ */
+
+public class VoteBatchWriter {
+    private final DatabaseManager databaseManager;
+    private final Logger logger;
+    private final LinkedBlockingQueue<QueuedVote> queue = new LinkedBlockingQueue<>();
+    private final long windowMs;
+    private final int batchSize;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile CompletableFuture<VoteCounts> lastQueued = CompletableFuture.completedFuture(null);
+
+    // stats
+    private final AtomicLong votesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    // A vote waiting to be written
+    public static class QueuedVote {
+        public final PlayerEnv tgt_playerEnv;
+        public final String serviceName;
+        public final long voteKey;          // unique per vote, 0 for none
+        public final long voteStamp;        // payload timestamp stamp for the dedup window, 0 for none
+        public final long receivedTs;
+        public final boolean replayed;      // from the vote journal, it may be stored already
+        public boolean duplicate;           // set by the store, already stored under its key
+        public final CompletableFuture<VoteCounts> future = new CompletableFuture<>();
+
+        QueuedVote(PlayerEnv tgt_playerEnv, String serviceName) {
+            this(tgt_playerEnv, serviceName, 0, 0, System.currentTimeMillis(), false);
+        }
+
+        QueuedVote(PlayerEnv tgt_playerEnv, String serviceName, long voteKey, long voteStamp, long receivedTs, boolean replayed) {
+            this.tgt_playerEnv = tgt_playerEnv;
+            this.serviceName = serviceName;
+            this.voteKey = voteKey;
+            this.voteStamp = voteStamp;
+            this.receivedTs = receivedTs;
+            this.replayed = replayed;
+        }
+    }
+
+    // Constructor
+    public VoteBatchWriter(DelphiVote plugin, DatabaseManager databaseManager, long windowMs, int batchSize) {
+        this.databaseManager = databaseManager;
+        this.logger = plugin.getLogger();
+        this.windowMs = Math.max(0, windowMs);
+        this.batchSize = Math.max(1, batchSize);
+        this.writerThread = new Thread(this::run, "DelphiVote-vote-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Queue a vote, the future completes when its batch commits
+    public CompletableFuture<VoteCounts> submit(QueuedVote vote) {
+        if (!running) {
+            vote.future.completeExceptionally(new IllegalStateException("Vote writer is shut down"));
+            return vote.future;
+        }
+        lastQueued = vote.future;
+        queue.add(vote);
+        return vote.future;
+    }
+
+    // Wait until every vote queued so far has been written
+    public void flush() {
+        try {
+            lastQueued.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // failures are reported to each caller's future
+        }
+    }
+
+    // Write remaining votes and stop the writer thread
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warning("Vote writer stopped with " + queue.size() + " votes unwritten");
+        }
+        logger.info(getStats());
+    }
+
+    // Collect batches until shut down
+    private void run() {
+        List<QueuedVote> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedVote first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    QueuedVote next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    // Write one batch and complete its futures in order; any failure fails the whole batch, the
+    // writer thread carries on with the next one
+    private void writeBatch(List<QueuedVote> batch) {
+        long start = System.nanoTime();
+        try {
+            List<VoteCounts> counts = databaseManager.writeVoteBatch(batch);
+            writeNanos.addAndGet(System.nanoTime() - start);
+            votesWritten.addAndGet(batch.size());
+            batchesWritten.incrementAndGet();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(counts.get(i));
+            }
+        } catch (StoreException | RuntimeException e) {
+            logger.severe("Error adding vote batch of " + batch.size() + ": " + e.getMessage());
+            for (QueuedVote vote : batch) {
+                vote.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Throughput summary
+    public String getStats() {
+        long votes = votesWritten.get();
+        long batches = batchesWritten.get();
+        double seconds = writeNanos.get() / 1_000_000_000.0;
+        return String.format("Vote writer: %d votes in %d batches (avg %.1f per batch, batch_size %d, window %d ms), %.0f votes/sec of write time, %d queued",
+            votes, batches, batches == 0 ? 0.0 : (double) votes / batches, batchSize, windowMs,
+            seconds == 0 ? 0.0 : votes / seconds, queue.size());
+    }
+}
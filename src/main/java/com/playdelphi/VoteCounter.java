@@ -0,0 +1,69 @@
+package com.playdelphi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * VoteCounter holds per-player and server-wide vote totals in memory.
+ *
+ * Totals are loaded from the votes table once at startup and then incremented as
+ * each vote batch commits, so trigger evaluation and stats never need COUNT(*).
+ * Every method is a short critical section with no I/O, so reads from the main thread
+ * don't wait on the database; DatabaseManager orders batch commits and recounts with
+ * its own write lock (see writeVoteBatch and rebuildVoteCounts).
+ */
+
+public class VoteCounter {
+    private Map<UUID, int[]> playerVotes = new HashMap<>();
+    private int serverVotes;
+
+    // Replace all totals
+    public synchronized void load(Map<UUID, Integer> counts) {
+        Map<UUID, int[]> loaded = new HashMap<>(Math.max(16, counts.size() * 4 / 3 + 1));
+        int total = 0;
+        for (Map.Entry<UUID, Integer> entry : counts.entrySet()) {
+            loaded.put(entry.getKey(), new int[] {entry.getValue()});
+            total += entry.getValue();
+        }
+        playerVotes = loaded;
+        serverVotes = total;
+    }
+
+    // Count one vote, returns the totals including it
+    public synchronized VoteCounts increment(UUID uuid) {
+        int[] count = playerVotes.computeIfAbsent(uuid, key -> new int[1]);
+        count[0]++;
+        serverVotes++;
+        return new VoteCounts(count[0], serverVotes);
+    }
+
+    public synchronized int getPlayerVotes(UUID uuid) {
+        int[] count = playerVotes.get(uuid);
+        return count == null ? 0 : count[0];
+    }
+
+    public synchronized int getServerVotes() {
+        return serverVotes;
+    }
+
+    public synchronized int getPlayerCount() {
+        return playerVotes.size();
+    }
+
+    // Number of players whose total differs from the given counts
+    public synchronized int countMismatches(Map<UUID, Integer> counts) {
+        int mismatches = 0;
+        for (Map.Entry<UUID, Integer> entry : counts.entrySet()) {
+            if (getPlayerVotes(entry.getKey()) != entry.getValue()) {
+                mismatches++;
+            }
+        }
+        for (UUID uuid : playerVotes.keySet()) {
+            if (!counts.containsKey(uuid)) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
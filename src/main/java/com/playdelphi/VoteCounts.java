@@ -0,0 +1,5 @@
+package com.playdelphi;
+
+// Player and server vote totals as of a recorded vote
+public record VoteCounts(int playerVoteCount, int serverVoteCount) {
+}
@@ -0,0 +1,172 @@
+package com.playdelphi;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * VoteDedupWindow remembers recently seen votes so retransmitted Votifier payloads
+ * can be dropped.
+ *
+ * Votes are keyed by player name, service and the payload timestamp, hashed to a
+ * 64-bit value. Keys live in a ring of time buckets, each covering window / BUCKETS
+ * of time. Moving the ring forward drops a whole bucket at once, so expiry costs
+ * O(1) no matter how many votes it held.
+ *
+ * The payload timestamp is journaled and stored with each vote as its stamp (a hash of
+ * the timestamp), so the window rebuilt at startup holds the same keys. Votes without a
+ * stamp (admin votes, and votes stored before stamps were kept) are left out rather than
+ * matching every payload for the player and service.
+ */
+
+public class VoteDedupWindow {
+    private static final int BUCKETS = 10;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long bucketMillis;
+    private final LongSet[] buckets = new LongSet[BUCKETS];
+    private long currentBucket;
+    private long duplicates;
+
+    // Constructor
+    public VoteDedupWindow(long windowMillis) {
+        this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongSet();
+        }
+    }
+
+    // Record a vote, returns false if the same vote was already seen within the window
+    public synchronized boolean add(String playerName, String serviceName, String voteTimestamp, long now) {
+        advance(now);
+        long key = hash(playerName, serviceName, stamp(voteTimestamp));
+        for (LongSet bucket : buckets) {
+            if (bucket.contains(key)) {
+                duplicates++;
+                return false;
+            }
+        }
+        bucketFor(now).add(key);
+        return true;
+    }
+
+    // Record a vote seen at an earlier time by its stored stamp (startup rebuild, journal replay);
+    // votes without a stamp are skipped
+    public synchronized void addPast(String playerName, String serviceName, long voteStamp, long seenAt, long now) {
+        if (voteStamp == 0) {
+            return;
+        }
+        advance(now);
+        long bucketIndex = seenAt / bucketMillis;
+        if (bucketIndex > currentBucket - BUCKETS && bucketIndex <= currentBucket) {
+            buckets[(int) (bucketIndex % BUCKETS)].add(hash(playerName, serviceName, voteStamp));
+        }
+    }
+
+    // Stamp stored with a vote in place of its payload timestamp, 0 for votes without one
+    public static long stamp(String voteTimestamp) {
+        if (voteTimestamp == null) {
+            return 0;
+        }
+        long h = hash(FNV_OFFSET, voteTimestamp);
+        return h != 0 ? h : 1;
+    }
+
+    // Number of duplicate votes dropped
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    // Clear buckets that have fallen out of the window
+    private void advance(long now) {
+        long bucketIndex = now / bucketMillis;
+        if (bucketIndex <= currentBucket) {
+            return;
+        }
+        long steps = Math.min(bucketIndex - currentBucket, BUCKETS);
+        for (long i = 1; i <= steps; i++) {
+            buckets[(int) ((currentBucket + i) % BUCKETS)] = new LongSet();
+        }
+        currentBucket = bucketIndex;
+    }
+
+    private LongSet bucketFor(long now) {
+        return buckets[(int) ((now / bucketMillis) % BUCKETS)];
+    }
+
+    // 64-bit FNV-1a over the lower-cased name, service and timestamp stamp
+    private static long hash(String playerName, String serviceName, long voteStamp) {
+        long h = FNV_OFFSET;
+        h = hash(h, playerName.toLowerCase());
+        h = hash(h, serviceName);
+        for (int shift = 0; shift < 64; shift += 8) {
+            h ^= (voteStamp >>> shift) & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long hash(long h, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= FNV_PRIME;
+        }
+        h ^= 0xff; // separator
+        return h * FNV_PRIME;
+    }
+
+    // Minimal open addressing set of longs, avoids boxing every key
+    private static class LongSet {
+        private static final long EMPTY = 0;
+        private long[] table = new long[16];
+        private int size;
+        private boolean hasEmptyKey;
+
+        boolean contains(long key) {
+            if (key == EMPTY) {
+                return hasEmptyKey;
+            }
+            int mask = table.length - 1;
+            for (int i = mix(key) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+                if (table[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long key) {
+            if (key == EMPTY) {
+                hasEmptyKey = true;
+                return;
+            }
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int i = mix(key) & mask;
+            while (table[i] != EMPTY) {
+                if (table[i] == key) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            size++;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            size = 0;
+            for (long key : old) {
+                if (key != EMPTY) {
+                    add(key);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.ImportException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * VoteImportTool imports vote history without a running server, for histories too big to
+ * load through /vote import. Stop the server first, then run it from the server folder
+ * with the server's libraries on the classpath, e.g. on Paper:
+ *
+ *   java -cp 'bundler/versions/*:bundler/libraries/*:plugins/DelphiVote.jar' com.playdelphi.VoteImportTool
+ *       plugins/DelphiVote votingplugin plugins/VotingPlugin/Data/VotingPlugin.db
+ *
+ * It reads the database settings and import section from the plugin folder's config.yml.
+ * Ctrl-C stops after the current batch and running the same command again carries on
+ * from there.
+ */
+
+public class VoteImportTool {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: VoteImportTool <plugin folder> <votingplugin|superbvote|csv> <file or jdbc url> [table]");
+            System.exit(2);
+        }
+        Logger logger = Logger.getLogger("DelphiVote");
+        File pluginFolder = new File(args[0]);
+        File configFile = new File(pluginFolder, "config.yml");
+        if (!configFile.isFile()) {
+            System.err.println("No config.yml in " + pluginFolder.getAbsolutePath());
+            System.exit(2);
+        }
+        FileConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+        String dbType = config.getString("database.type", "sqlite").toLowerCase();
+        if (!dbType.equals("sqlite") && !dbType.equals("mysql")) {
+            System.err.println("Vote history can only be imported into sqlite or mysql, database.type is " + dbType);
+            System.exit(2);
+        }
+        FileConfiguration databaseConfig;
+        try (InputStream in = VoteImportTool.class.getResourceAsStream("/database.yml")) {
+            databaseConfig = YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        // Ctrl-C lets the current batch commit and the indexes come back before exiting
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running.set(false);
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        JdbcVoteStore store = new JdbcVoteStore(config, databaseConfig, pluginFolder, logger, dbType.equals("mysql"));
+        boolean failed = false;
+        try {
+            while (store.isMigrating() && running.get()) {
+                Thread.sleep(500);
+            }
+            String table = args.length > 3 ? args[3] : null;
+            VoteImporter importer = new VoteImporter(store, logger, config.getInt("import.batch_size", 10000),
+                config.getBoolean("import.defer_indexes", true), running::get);
+            VoteImporter.Result result = importer.run(ImportSource.key(args[1], args[2], table), ImportSource.create(args[1], args[2], table));
+            if (result.imported() > 0) {
+                logger.info("Start the server or run /vote recount to load the imported votes");
+            }
+        } catch (ImportException e) {
+            logger.severe("Vote import failed: " + e.getMessage());
+            failed = true;
+        } finally {
+            store.close();
+            finished.countDown();
+        }
+        // exiting from inside a shutdown would block on the hook
+        if (failed && running.get()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.ImportException;
+import com.playdelphi.exceptions.StoreException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * VoteImporter loads vote history from another plugin (an ImportSource) into the
+ * DelphiVote tables.
+ *
+ * Votes are written import.batch_size rows to a transaction, and each transaction also
+ * saves the source's position, so an import that stops for any reason carries on from
+ * its last committed batch when it's run again with the same source, and one that
+ * finished isn't repeated. Vote totals go to the daily summary table, one row per player,
+ * and count towards all-time totals; single votes go to the votes table with their own
+ * time. While single votes load, the votes table's secondary indexes are dropped and
+ * rebuilt once at the end (import.defer_indexes), which is far quicker than updating
+ * them for every row, at the cost of slower lookups by player until they're back.
+ *
+ * Used by /vote import on a running server and by VoteImportTool without one.
+ */
+
+public class VoteImporter {
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    private final JdbcVoteStore store;
+    private final Logger logger;
+    private final int batchSize;
+    private final boolean deferIndexes;
+    private final BooleanSupplier keepRunning;
+
+    // Where an import got to: the source position after the last committed batch
+    public record Checkpoint(String position, long rows, boolean complete) {}
+
+    // What a run did: rows imported by this run and in total, rows the source passed over
+    public record Result(long imported, long rows, long skipped, boolean complete, long millis) {}
+
+    // Constructor, keepRunning is checked after every batch so an import can be stopped cleanly
+    public VoteImporter(JdbcVoteStore store, Logger logger, int batchSize, boolean deferIndexes, BooleanSupplier keepRunning) {
+        this.store = store;
+        this.logger = logger;
+        this.batchSize = Math.max(1, batchSize);
+        this.deferIndexes = deferIndexes;
+        this.keepRunning = keepRunning;
+    }
+
+    // Import everything from source under key, resuming from its checkpoint; closes the source
+    public Result run(String key, ImportSource source) throws ImportException {
+        try (source) {
+            SchemaMigrator migrator = store.getSchemaMigrator();
+            if (store.isMigrating() || !migrator.isProvided("vote_imports") || !migrator.isProvided("vote_summary")) {
+                throw new ImportException("Database migrations haven't finished, run the import again once they have");
+            }
+
+            Checkpoint checkpoint = store.getImportCheckpoint(key);
+            if (checkpoint != null && checkpoint.complete()) {
+                logger.info("Import " + key + " already finished with " + checkpoint.rows() + " rows");
+                return new Result(0, checkpoint.rows(), 0, true, 0);
+            }
+            long rows = checkpoint == null ? 0 : checkpoint.rows();
+            if (rows > 0) {
+                logger.info("Resuming import " + key + " after " + rows + " rows");
+            }
+            source.open(checkpoint == null ? null : checkpoint.position());
+            return load(key, source, rows);
+        } catch (StoreException e) {
+            throw new ImportException("Error writing imported votes: " + e.getMessage(), e);
+        }
+    }
+
+    private Result load(String key, ImportSource source, long rows) throws ImportException, StoreException {
+        long start = System.currentTimeMillis();
+        long lastProgress = start;
+        long resumedRows = rows;
+        boolean deferred = false;
+        try {
+            if (source.singleVotes() && deferIndexes) {
+                List<String> dropped = store.deferVoteIndexes(key);
+                deferred = !dropped.isEmpty();
+                if (deferred) {
+                    logger.info("Import " + key + ": vote indexes " + String.join(", ", dropped) + " dropped until the import finishes");
+                }
+            }
+
+            List<ImportedVote> batch = new ArrayList<>(batchSize);
+            ImportedVote vote;
+            do {
+                vote = source.next();
+                if (vote != null) {
+                    batch.add(vote);
+                }
+                if (batch.size() == batchSize || (vote == null && !batch.isEmpty())) {
+                    store.importBatch(key, batch, source.position(), rows + batch.size());
+                    rows += batch.size();
+                    batch.clear();
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        logger.info("Import " + key + ": " + rows + " rows, " + ratePerSecond(rows - resumedRows, now - start) + " rows/sec");
+                        lastProgress = now;
+                    }
+                    if (!keepRunning.getAsBoolean()) {
+                        logger.info("Import " + key + " stopped after " + rows + " rows, run it again to carry on");
+                        return new Result(rows - resumedRows, rows, source.skipped(), false, System.currentTimeMillis() - start);
+                    }
+                }
+            } while (vote != null);
+
+            store.finishImport(key, source.position(), rows);
+        } finally {
+            if (deferred) {
+                logger.info("Import " + key + ": rebuilding vote indexes");
+                store.restoreVoteIndexes();
+            }
+        }
+
+        long millis = System.currentTimeMillis() - start;
+        logger.info("Imported " + (rows - resumedRows) + " rows from " + key + " in " + millis + " ms (" + ratePerSecond(rows - resumedRows, millis)
+            + " rows/sec), " + source.skipped() + " rows skipped");
+        return new Result(rows - resumedRows, rows, source.skipped(), true, millis);
+    }
+
+    private static long ratePerSecond(long rows, long millis) {
+        return millis == 0 ? rows : rows * 1000 / millis;
+    }
+}
@@ -0,0 +1,346 @@
+package com.playdelphi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * VoteJournal is an append-only, memory-mapped log of incoming votes.
+ *
+ * Every vote is appended before any database work and marked committed once it has
+ * been written to the votes table (or permanently rejected). Votes still pending at
+ * startup are handed back for replay, in the order they were received, and read(id)
+ * hands back a pending vote while the server runs so it can be submitted again.
+ * Each vote carries its vote key, which the store keeps with the vote, so a vote that
+ * was written but not yet marked committed is recognised and not stored twice, and its
+ * payload stamp, so replayed votes still catch retransmitted payloads.
+ *
+ * The journal is split into fixed size segment files under data/journal. When a
+ * segment is full a new one is started, and any segment whose records are all
+ * committed is unmapped and deleted (Windows won't delete a file that is still mapped).
+ *
+ * Record layout:
+ *   byte   status (0 = pending, 1 = committed)
+ *   int    payload length
+ *   long   received timestamp
+ *   short  + bytes  player name (UTF-8)
+ *   short  + bytes  service name (UTF-8)
+ *   long   vote key (missing in records written before vote keys, read as 0)
+ *   long   vote stamp (missing in records written before vote stamps, read as 0)
+ *   int    CRC32 of the payload
+ * A zero length marks the end of the written part of a segment.
+ */
+
+public class VoteJournal {
+    private static final byte PENDING = 0;
+    private static final byte COMMITTED = 1;
+    private static final int HEADER_SIZE = 1 + 4;
+    private static final int CRC_SIZE = 4;
+    private static final String SEGMENT_PREFIX = "votes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final MethodHandle UNMAP = findUnmap();
+
+    private final Logger logger;
+    private final File journalFolder;
+    private final int segmentSize;
+    private final boolean sync;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private int nextSeq = 1;
+
+    // A journaled vote that has not been committed yet
+    public static class JournalEntry {
+        public final long journalId;
+        public final long receivedTs;
+        public final String playerName;
+        public final String serviceName;
+        public final long voteKey;
+        public final long voteStamp;
+
+        JournalEntry(long journalId, long receivedTs, String playerName, String serviceName, long voteKey, long voteStamp) {
+            this.journalId = journalId;
+            this.receivedTs = receivedTs;
+            this.playerName = playerName;
+            this.serviceName = serviceName;
+            this.voteKey = voteKey;
+            this.voteStamp = voteStamp;
+        }
+    }
+
+    // One mapped segment file
+    private static class Segment {
+        final int seq;
+        final File file;
+        final MappedByteBuffer buffer;
+        int writePos;
+        int pending;
+
+        Segment(int seq, File file, int size) throws IOException {
+            this.seq = seq;
+            this.file = file;
+            // the mapping stays valid after the file is closed
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, raf.length()));
+            }
+        }
+    }
+
+    // Constructor
+    public VoteJournal(DelphiVote plugin, int segmentSize, boolean sync) {
+        this.logger = plugin.getLogger();
+        this.journalFolder = new File(plugin.getDataFolder(), "data/journal");
+        this.segmentSize = Math.max(segmentSize, 64 * 1024);
+        this.sync = sync;
+        if (!journalFolder.exists()) {
+            journalFolder.mkdirs();
+        }
+    }
+
+    // Scan existing segments and return pending votes in order, then open a fresh active segment
+    public synchronized List<JournalEntry> open() throws IOException {
+        List<JournalEntry> pendingEntries = new ArrayList<>();
+
+        File[] files = journalFolder.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, (a, b) -> Integer.compare(segmentSeq(a), segmentSeq(b)));
+            for (File file : files) {
+                Segment segment = new Segment(segmentSeq(file), file, 0);
+                nextSeq = Math.max(nextSeq, segment.seq + 1);
+                scanSegment(segment, pendingEntries);
+                if (segment.pending == 0) {
+                    deleteSegment(segment);
+                } else {
+                    segments.put(segment.seq, segment);
+                }
+            }
+        }
+
+        rotate();
+        return pendingEntries;
+    }
+
+    // Append a vote, returns its journal id
+    public synchronized long append(String playerName, String serviceName, long receivedTs, long voteKey, long voteStamp) throws IOException {
+        byte[] name = truncate(playerName);
+        byte[] service = truncate(serviceName);
+        int payloadLength = 8 + 2 + name.length + 2 + service.length + 8 + 8;
+        int recordLength = HEADER_SIZE + payloadLength + CRC_SIZE;
+
+        // leave room for the zero length end marker
+        if (activeSegment.writePos + recordLength + HEADER_SIZE > activeSegment.buffer.capacity()) {
+            rotate();
+        }
+
+        MappedByteBuffer buffer = activeSegment.buffer;
+        int start = activeSegment.writePos;
+        int payloadStart = start + HEADER_SIZE;
+
+        buffer.putLong(payloadStart, receivedTs);
+        buffer.putShort(payloadStart + 8, (short) name.length);
+        buffer.put(payloadStart + 10, name);
+        buffer.putShort(payloadStart + 10 + name.length, (short) service.length);
+        buffer.put(payloadStart + 12 + name.length, service);
+        buffer.putLong(payloadStart + 12 + name.length + service.length, voteKey);
+        buffer.putLong(payloadStart + 20 + name.length + service.length, voteStamp);
+        buffer.putInt(payloadStart + payloadLength, crc(buffer, payloadStart, payloadLength));
+
+        // length last, so a torn write reads as the end of the segment
+        buffer.put(start, PENDING);
+        buffer.putInt(start + 1, payloadLength);
+
+        if (sync) {
+            buffer.force();
+        }
+
+        activeSegment.writePos += recordLength;
+        activeSegment.pending++;
+        return journalId(activeSegment.seq, start);
+    }
+
+    // Mark a vote as committed, deleting its segment once every record in it is committed
+    public synchronized void commit(long journalId) {
+        Segment segment = segments.get((int) (journalId >>> 32));
+        if (segment == null) {
+            return;
+        }
+        int offset = (int) journalId;
+        if (segment.buffer.get(offset) == COMMITTED) {
+            return;
+        }
+        segment.buffer.put(offset, COMMITTED);
+        if (sync) {
+            segment.buffer.force();
+        }
+        segment.pending--;
+
+        if (segment.pending <= 0 && segment != activeSegment) {
+            segments.remove(segment.seq);
+            deleteSegment(segment);
+        }
+    }
+
+    // A vote that is still pending, null once it's committed or its segment is gone
+    public synchronized JournalEntry read(long journalId) {
+        Segment segment = segments.get((int) (journalId >>> 32));
+        int offset = (int) journalId;
+        if (segment == null || offset < 0 || offset >= segment.writePos || segment.buffer.get(offset) != PENDING) {
+            return null;
+        }
+        return readEntry(segment, offset);
+    }
+
+    // Number of uncommitted votes
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (Segment segment : segments.values()) {
+            pending += segment.pending;
+        }
+        return pending;
+    }
+
+    // Flush and close all segments
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            unmap(segment);
+        }
+        segments.clear();
+        activeSegment = null;
+    }
+
+    // Start a new active segment, dropping the old one if nothing in it is pending
+    private void rotate() throws IOException {
+        Segment previous = activeSegment;
+        int seq = nextSeq++;
+        activeSegment = new Segment(seq, new File(journalFolder, SEGMENT_PREFIX + seq + SEGMENT_SUFFIX), segmentSize);
+        segments.put(seq, activeSegment);
+
+        if (previous != null && previous.pending <= 0) {
+            segments.remove(previous.seq);
+            deleteSegment(previous);
+        }
+    }
+
+    // Read records from a segment, collecting the pending ones
+    private void scanSegment(Segment segment, List<JournalEntry> pendingEntries) {
+        MappedByteBuffer buffer = segment.buffer;
+        int pos = 0;
+        while (pos + HEADER_SIZE <= buffer.capacity()) {
+            byte status = buffer.get(pos);
+            int payloadLength = buffer.getInt(pos + 1);
+            int payloadStart = pos + HEADER_SIZE;
+            if (payloadLength <= 0 || payloadStart + payloadLength + CRC_SIZE > buffer.capacity()) {
+                break;
+            }
+            if (buffer.getInt(payloadStart + payloadLength) != crc(buffer, payloadStart, payloadLength)) {
+                logger.warning("Vote journal " + segment.file.getName() + " has a damaged record at " + pos + ", ignoring the rest of the segment");
+                break;
+            }
+
+            if (status == PENDING) {
+                pendingEntries.add(readEntry(segment, pos));
+                segment.pending++;
+            }
+            pos = payloadStart + payloadLength + CRC_SIZE;
+        }
+        segment.writePos = pos;
+    }
+
+    // Read the record at pos, already checked by scanSegment or written by append
+    private static JournalEntry readEntry(Segment segment, int pos) {
+        MappedByteBuffer buffer = segment.buffer;
+        int payloadLength = buffer.getInt(pos + 1);
+        int payloadStart = pos + HEADER_SIZE;
+        long receivedTs = buffer.getLong(payloadStart);
+        int nameLength = buffer.getShort(payloadStart + 8);
+        String playerName = readString(buffer, payloadStart + 10, nameLength);
+        int serviceLength = buffer.getShort(payloadStart + 10 + nameLength);
+        String serviceName = readString(buffer, payloadStart + 12 + nameLength, serviceLength);
+        int keyStart = payloadStart + 12 + nameLength + serviceLength;
+        int payloadEnd = payloadStart + payloadLength;
+        long voteKey = keyStart + 8 <= payloadEnd ? buffer.getLong(keyStart) : 0;
+        long voteStamp = keyStart + 16 <= payloadEnd ? buffer.getLong(keyStart + 8) : 0;
+        return new JournalEntry(journalId(segment.seq, pos), receivedTs, playerName, serviceName, voteKey, voteStamp);
+    }
+
+    // Delete a segment that is no longer in segments, so nothing reads its buffer again
+    private void deleteSegment(Segment segment) {
+        unmap(segment);
+        if (!segment.file.delete()) {
+            logger.warning("Unable to delete vote journal segment " + segment.file.getName());
+        }
+    }
+
+    // Release a segment's mapping now instead of when the buffer is garbage collected, the
+    // buffer must not be used afterwards
+    private void unmap(Segment segment) {
+        if (UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invokeExact((ByteBuffer) segment.buffer);
+        } catch (Throwable e) {
+            logger.warning("Unable to unmap vote journal segment " + segment.file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // There's no public way to unmap a buffer before the foreign memory API, so bind
+    // sun.misc.Unsafe.invokeCleaner once; null leaves mappings to the garbage collector
+    private static MethodHandle findUnmap() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long journalId(int seq, int offset) {
+        return ((long) seq << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentSeq(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int crc(MappedByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    private static String readString(MappedByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Keep names within a short length prefix
+    private static byte[] truncate(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        return bytes.length > 1024 ? Arrays.copyOf(bytes, 1024) : bytes;
+    }
+}
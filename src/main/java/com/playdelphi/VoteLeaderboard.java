@@ -0,0 +1,246 @@
+package com.playdelphi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * VoteLeaderboard keeps players ranked by vote count, keyed by UUID.
+ *
+ * Players are held in a treap (a binary search tree balanced by random priorities)
+ * where each node also stores the size of its subtree. That makes an update, a rank
+ * lookup and finding the player at a given rank all O(log n), and a top-N listing
+ * O(log n + N), without touching the database.
+ *
+ * Players with the same vote count are ranked by who reached that count first.
+ * Names are the latest known name for each UUID, so renamed players keep one row.
+ */
+
+public class VoteLeaderboard {
+    private final SplittableRandom random = new SplittableRandom();
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private final Map<UUID, String> names = new HashMap<>();
+    private Node root;
+    private long sequence;
+
+    // A ranked row
+    public record Entry(int rank, UUID uuid, String playerName, int votes) {}
+
+    private static class Node {
+        final UUID uuid;
+        final int votes;
+        final long seq;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(UUID uuid, int votes, long seq, int priority) {
+            this.uuid = uuid;
+            this.votes = votes;
+            this.seq = seq;
+            this.priority = priority;
+        }
+    }
+
+    // Replace all players and names
+    public synchronized void load(Map<UUID, Integer> counts, Map<UUID, String> playerNames) {
+        clear();
+        names.clear();
+        names.putAll(playerNames);
+        for (Map.Entry<UUID, Integer> count : counts.entrySet()) {
+            update(count.getKey(), count.getValue());
+        }
+    }
+
+    // Remove all players, keeping their names
+    public synchronized void clear() {
+        nodes.clear();
+        root = null;
+        sequence = 0;
+    }
+
+    // Set a player's vote count
+    public synchronized void update(UUID uuid, int votes) {
+        Node old = nodes.remove(uuid);
+        if (old != null) {
+            root = remove(root, old);
+        }
+        if (votes > 0) {
+            Node node = new Node(uuid, votes, sequence++, random.nextInt());
+            nodes.put(uuid, node);
+            root = insert(root, node);
+        }
+    }
+
+    // Record the latest name for a player
+    public synchronized void setName(UUID uuid, String playerName) {
+        names.put(uuid, playerName);
+    }
+
+    // Top players, best first
+    public synchronized List<Entry> getTop(int limit) {
+        List<Entry> entries = new ArrayList<>(Math.min(limit, size(root)));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while ((node != null || !stack.isEmpty()) && entries.size() < limit) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            entries.add(entry(entries.size() + 1, node));
+            node = node.right;
+        }
+        return entries;
+    }
+
+    // Player's rank starting at 1, 0 if the player has no votes
+    public synchronized int getRank(UUID uuid) {
+        Node node = nodes.get(uuid);
+        return node == null ? 0 : rank(node);
+    }
+
+    // Player's row, null if the player has no votes
+    public synchronized Entry getEntry(UUID uuid) {
+        Node node = nodes.get(uuid);
+        return node == null ? null : entry(rank(node), node);
+    }
+
+    // Players ranked within radius places of the given player, including the player
+    public synchronized List<Entry> getAround(UUID uuid, int radius) {
+        List<Entry> entries = new ArrayList<>();
+        Node node = nodes.get(uuid);
+        if (node == null) {
+            return entries;
+        }
+        int rank = rank(node);
+        int last = Math.min(size(root), rank + radius);
+        for (int i = Math.max(1, rank - radius); i <= last; i++) {
+            entries.add(entry(i, select(i)));
+        }
+        return entries;
+    }
+
+    // Number of ranked players
+    public synchronized int size() {
+        return size(root);
+    }
+
+    private Entry entry(int rank, Node node) {
+        return new Entry(rank, node.uuid, names.getOrDefault(node.uuid, node.uuid.toString()), node.votes);
+    }
+
+    // More votes first, then whoever got there first
+    private static int compare(Node a, Node b) {
+        if (a.votes != b.votes) {
+            return a.votes > b.votes ? -1 : 1;
+        }
+        return Long.compare(a.seq, b.seq);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node fix(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    private Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.priority > node.priority) {
+            Node[] parts = split(node, inserted);
+            inserted.left = parts[0];
+            inserted.right = parts[1];
+            return fix(inserted);
+        }
+        if (compare(inserted, node) < 0) {
+            node.left = insert(node.left, inserted);
+        } else {
+            node.right = insert(node.right, inserted);
+        }
+        return fix(node);
+    }
+
+    private Node remove(Node node, Node removed) {
+        if (node == removed) {
+            return merge(node.left, node.right);
+        }
+        if (compare(removed, node) < 0) {
+            node.left = remove(node.left, removed);
+        } else {
+            node.right = remove(node.right, removed);
+        }
+        return fix(node);
+    }
+
+    // Split into nodes ranked before key and nodes ranked after it
+    private Node[] split(Node node, Node key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(node, key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            parts[0] = fix(node);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        parts[1] = fix(node);
+        return parts;
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return fix(left);
+        }
+        right.left = merge(left, right.left);
+        return fix(right);
+    }
+
+    private int rank(Node target) {
+        int rank = 1;
+        Node node = root;
+        while (node != target) {
+            if (compare(target, node) < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank + size(node.left);
+    }
+
+    private Node select(int rank) {
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (rank <= leftSize) {
+                node = node.left;
+            } else if (rank == leftSize + 1) {
+                return node;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+}
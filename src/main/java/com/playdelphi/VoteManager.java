@@ -1,60 +1,277 @@
 package com.playdelphi;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 public class VoteManager {
     private final DelphiVote plugin;
     private final Logger logger;
+    private final ConfigManager configManager;
     private final LanguageManager languageManager;
     private final DatabaseManager databaseManager;
     private final RewardManager rewardManager;
+    private final PlayerEnvManager playerEnvManager;
+    private final VotePipeline votePipeline;
+    private VoteJournal voteJournal;
+    private VoteDedupWindow voteDedupWindow;
+    private List<VoteJournal.JournalEntry> journalReplay = List.of();
+    private final ConcurrentSkipListMap<Long, Long> parkedVotes = new ConcurrentSkipListMap<>(); // journal id (order received) to retry time
+    private final AtomicLong lastVoteKey = new AtomicLong();
+    private long retryMillis;
+    private int redrivenVotes; // since the pipeline was last caught up, vote retry thread only
 
     // Constructor
     public VoteManager(DelphiVote plugin) {
         this.plugin = plugin;
+        this.configManager = plugin.getConfigManager();
         this.databaseManager = plugin.getDatabaseManager();
         this.languageManager = plugin.getLanguageManager();
         this.logger = plugin.getLogger();
         this.rewardManager = plugin.getRewardManager();
+        this.playerEnvManager = plugin.getPlayerEnvManager();
+
+        YamlConfiguration mainConfig = configManager.getConfig("config");
+        int queueSize = mainConfig.getInt("vote_pipeline.queue_size", 1000);
+        int resolveThreads = mainConfig.getInt("vote_pipeline.resolve_threads", 2);
+        int resolveRetries = mainConfig.getInt("vote_pipeline.resolve_retries", 5);
+        this.votePipeline = new VotePipeline(plugin, this, queueSize, resolveThreads, resolveRetries);
+
+        // rebuild the duplicate vote window from recently recorded votes
+        if (mainConfig.getBoolean("vote_dedup.enabled", true)) {
+            long windowSeconds = mainConfig.getLong("vote_dedup.window_seconds", 600);
+            voteDedupWindow = new VoteDedupWindow(windowSeconds * 1000);
+            long now = System.currentTimeMillis();
+            databaseManager.forEachRecentVote(windowSeconds, (uuid, playerName, serviceName, voteStamp, ageSeconds) ->
+                voteDedupWindow.addPast(playerName, serviceName, voteStamp, now - ageSeconds * 1000, now));
+        }
+
+        // open vote journal, pending votes are replayed once the plugin is enabled
+        retryMillis = Math.max(1, mainConfig.getLong("journal.retry_seconds", 30)) * 1000;
+        if (mainConfig.getBoolean("journal.enabled", true)) {
+            try {
+                voteJournal = new VoteJournal(plugin, mainConfig.getInt("journal.segment_size_kb", 1024) * 1024, mainConfig.getBoolean("journal.sync", false));
+                journalReplay = voteJournal.open();
+            } catch (IOException e) {
+                logger.severe("Error opening vote journal, votes will not be journaled: " + e.getMessage());
+                voteJournal = null;
+            }
+        }
+    }
+
+    // Queue a vote for processing
+    public void handleVote(PlayerEnv playerEnv, String tgt_playerName, String serviceName) {
+        handleVote(playerEnv, tgt_playerName, serviceName, null);
     }
 
-    public void handleVote(PlayerEnv playerEnv, PlayerEnv tgt_playerEnv, String serviceName) {
+    // Queue a vote for processing, Votifier votes have no initiating player and carry a payload timestamp
+    public void handleVote(PlayerEnv playerEnv, String tgt_playerName, String serviceName, String voteTimestamp) {
+        PendingVote vote = new PendingVote(playerEnv, tgt_playerName, serviceName);
+        vote.voteTimestamp = voteTimestamp;
+        vote.voteKey = nextVoteKey(vote.receivedTs);
+        vote.voteStamp = VoteDedupWindow.stamp(voteTimestamp);
 
-        // if UUID invalid, stop here
-        if (tgt_playerEnv.uuid == null && tgt_playerEnv.player != null) {
-            playerEnv.player.sendMessage("Unable to resolve UUID for " + tgt_playerEnv.name + ". Vote not recorded.");
+        // drop retransmitted Votifier payloads
+        if (voteDedupWindow != null && voteTimestamp != null
+                && !voteDedupWindow.add(tgt_playerName, serviceName, voteTimestamp, vote.receivedTs)) {
+            logger.info("Ignored duplicate vote for " + tgt_playerName + " from " + serviceName);
             return;
         }
 
-        // 2. update database with vote
-        try {
-            databaseManager.addVote(playerEnv, tgt_playerEnv, serviceName);
-
-            // Message to initiating player
-            if (playerEnv.uuid != tgt_playerEnv.uuid && playerEnv.player != null) {
-                playerEnv.sendMessage(languageManager.getMessage("vote_success", Map.of("player", tgt_playerEnv.name, "service", serviceName)));
+        // journal first, so the vote survives a crash or database outage
+        if (voteJournal != null) {
+            try {
+                vote.journalId = voteJournal.append(tgt_playerName, serviceName, vote.receivedTs, vote.voteKey, vote.voteStamp);
+            } catch (IOException e) {
+                logger.warning("Error journaling vote for " + tgt_playerName + ": " + e.getMessage());
             }
+        }
+        votePipeline.submit(vote);
+    }
 
-            // Message to target player
-            if (tgt_playerEnv.player != null) {
-                tgt_playerEnv.sendMessage(languageManager.getMessage("vote_success_player", Map.of("service", serviceName)));
+    // Resubmit votes left uncommitted by the last run, in the order they were received
+    public void replayJournal() {
+        if (journalReplay.isEmpty()) {
+            return;
+        }
+        logger.info("Replaying " + journalReplay.size() + " uncommitted votes from the vote journal");
+        long now = System.currentTimeMillis();
+        for (VoteJournal.JournalEntry entry : journalReplay) {
+            // replayed votes are not in the votes table yet, so retransmits must still match them
+            if (voteDedupWindow != null) {
+                voteDedupWindow.addPast(entry.playerName, entry.serviceName, entry.voteStamp, entry.receivedTs, now);
             }
+            submitJournaled(entry);
+        }
+        journalReplay = List.of();
+    }
+
+    // A full pipeline stage left this vote pending in the journal, it's resubmitted once there's room (worker thread)
+    void shedVote(PendingVote vote) {
+        if (parkedVotes.isEmpty()) {
+            logger.warning("Vote pipeline is full, votes are left in the vote journal until it catches up");
+        }
+        parkedVotes.put(vote.journalId, 0L);
+    }
 
-            // Broadcast to server
-            if (!serviceName.equals("Admin")) {
-                plugin.getServer().broadcastMessage(languageManager.getMessage("vote_success_broadcast", Map.of("player", tgt_playerEnv.name, "service", serviceName)));
+    // A journaled vote couldn't be resolved or written, submit it again from the journal after
+    // journal.retry_seconds (worker or vote writer thread); false if it isn't journaled
+    boolean retryVote(PendingVote vote) {
+        if (vote.journalId < 0) {
+            return false;
+        }
+        parkedVotes.put(vote.journalId, System.currentTimeMillis() + retryMillis);
+        return true;
+    }
+
+    public long getRetrySeconds() {
+        return retryMillis / 1000;
+    }
+
+    // Resubmit up to limit parked votes that are due, oldest first (vote retry thread)
+    void redriveParkedVotes(int limit) {
+        long now = System.currentTimeMillis();
+        int resubmitted = 0;
+        for (Map.Entry<Long, Long> parked : parkedVotes.entrySet()) {
+            if (resubmitted >= limit) {
+                break;
+            }
+            if (parked.getValue() > now || !parkedVotes.remove(parked.getKey(), parked.getValue())) {
+                continue;
             }
+            VoteJournal.JournalEntry entry = voteJournal.read(parked.getKey());
+            if (entry != null) {
+                submitJournaled(entry);
+                resubmitted++;
+            }
+        }
+        redrivenVotes += resubmitted;
+        if (redrivenVotes > 0 && parkedVotes.isEmpty()) {
+            logger.info("Vote pipeline caught up, resubmitted " + redrivenVotes + " votes from the vote journal");
+            redrivenVotes = 0;
+        }
+    }
+
+    // Number of votes waiting in the vote journal to be submitted again
+    public int getParkedVotes() {
+        return parkedVotes.size();
+    }
+
+    // Submit a vote read back from the journal, its initiating player isn't journaled
+    private void submitJournaled(VoteJournal.JournalEntry entry) {
+        PendingVote vote = new PendingVote(null, entry.playerName, entry.serviceName);
+        vote.receivedTs = entry.receivedTs;
+        vote.journalId = entry.journalId;
+        vote.voteKey = entry.voteKey;
+        vote.voteStamp = entry.voteStamp;
+        vote.replayed = true;
+        votePipeline.submit(vote);
+    }
+
+    // Keys start from the receive time in milliseconds, shifted to leave room for 65536 votes in
+    // the same millisecond, so they stay unique across restarts unless the clock goes back
+    private long nextVoteKey(long receivedTs) {
+        return lastVoteKey.accumulateAndGet(receivedTs << 16, (last, next) -> Math.max(last + 1, next));
+    }
 
-        } catch (Exception e) {
-            logger.severe("Error adding vote: " + e.getMessage());
+    // Stop accepting votes, drain the pipeline and close the journal
+    public void shutdown() {
+        votePipeline.shutdown();
+        if (voteJournal != null) {
+            voteJournal.close();
+        }
+    }
+
+    public VoteJournal getVoteJournal() {
+        return voteJournal;
+    }
+
+    public VoteDedupWindow getVoteDedupWindow() {
+        return voteDedupWindow;
+    }
+
+    public VotePipeline getVotePipeline() {
+        return votePipeline;
+    }
+
+    // 1. resolve target player (worker thread)
+    void resolveVote(PendingVote vote) {
+        vote.tgt_playerEnv = playerEnvManager.getPlayerEnv(vote.tgt_playerName);
+        if (vote.playerEnv == null) {
+            vote.playerEnv = vote.tgt_playerEnv;
+        }
+    }
+
+    // 2. queue vote for the database, the future completes with the vote counts once written
+    CompletableFuture<VoteCounts> persistVote(PendingVote vote) {
+        return databaseManager.addVote(new VoteBatchWriter.QueuedVote(vote.tgt_playerEnv, vote.serviceName, vote.voteKey, vote.voteStamp, vote.receivedTs, vote.replayed))
+            .whenComplete((counts, error) -> {
+                if (error == null) {
+                    commitJournal(vote);
+                }
+            });
+    }
+
+    // 3. find reward triggers that fire for this vote (worker thread)
+    void evaluateVote(PendingVote vote) {
+        if (vote.persisted) {
+            vote.triggers = rewardManager.evaluateTriggers(vote.playerVoteCount, vote.serverVoteCount);
+        }
+    }
+
+    // 4. send messages and give rewards (main thread)
+    void deliverVote(PendingVote vote) {
+        PlayerEnv playerEnv = vote.playerEnv;
+        PlayerEnv tgt_playerEnv = vote.tgt_playerEnv;
+        String serviceName = vote.serviceName;
+
+        if (!vote.persisted) {
             if (playerEnv.player != null) {
                 playerEnv.sendMessage(languageManager.getMessage("vote_fail", Map.of("player", tgt_playerEnv.name, "service", serviceName)));
             }
+            return;
+        }
+
+        // Message to initiating player
+        if (playerEnv.uuid != tgt_playerEnv.uuid && playerEnv.player != null) {
+            playerEnv.sendMessage(languageManager.getMessage("vote_success", Map.of("player", tgt_playerEnv.name, "service", serviceName)));
+        }
+
+        // Message to target player
+        if (tgt_playerEnv.player != null) {
+            tgt_playerEnv.sendMessage(languageManager.getMessage("vote_success_player", Map.of("service", serviceName)));
+        }
+
+        // Broadcast to server
+        if (!serviceName.equals("Admin")) {
+            plugin.getServer().broadcastMessage(languageManager.getMessage("vote_success_broadcast", Map.of("player", tgt_playerEnv.name, "service", serviceName)));
         }
 
-        // 3. process reward triggers
-        rewardManager.handleTriggers(playerEnv, tgt_playerEnv, serviceName);
+        // process reward triggers
+        rewardManager.executeTriggers(playerEnv, tgt_playerEnv, vote.triggers, vote.playerVoteCount, serviceName);
+    }
+
+    // Target player could not be resolved (main thread)
+    void rejectVote(PendingVote vote) {
+        // the vote can never be recorded, so don't replay it
+        commitJournal(vote);
+
+        if (vote.playerEnv != null && vote.playerEnv.player != null) {
+            vote.playerEnv.sendMessage(languageManager.getMessage("player_not_found", Map.of("player", vote.tgt_playerName)));
+        } else {
+            logger.warning("Vote from " + vote.serviceName + " not recorded, unable to resolve UUID for " + vote.tgt_playerName);
+        }
     }
-}
 
+    // Mark a vote as done in the journal
+    private void commitJournal(PendingVote vote) {
+        if (voteJournal != null && vote.journalId >= 0) {
+            voteJournal.commit(vote.journalId);
+        }
+    }
+}
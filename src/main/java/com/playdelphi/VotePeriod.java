@@ -0,0 +1,31 @@
+package com.playdelphi;
+
+// Leaderboard periods, rolling windows measured in hours back from now
+public enum VotePeriod {
+    DAY(24),
+    WEEK(24 * 7),
+    MONTH(24 * 30),
+    ALL_TIME(0);
+
+    public final int hours;
+
+    VotePeriod(int hours) {
+        this.hours = hours;
+    }
+
+    // Parse a period name (day, week, month, all), null if it isn't one
+    public static VotePeriod fromString(String name) {
+        switch (name.toLowerCase()) {
+            case "day":
+                return DAY;
+            case "week":
+                return WEEK;
+            case "month":
+                return MONTH;
+            case "all":
+                return ALL_TIME;
+            default:
+                return null;
+        }
+    }
+}
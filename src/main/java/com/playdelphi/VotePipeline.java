@@ -0,0 +1,257 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.PlayerNotFoundException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * VotePipeline moves incoming votes off the server main thread.
+ *
+ * Each vote passes through three worker stages, each with its own bounded queue:
+ * - resolve:  look up the target player's UUID (may hit the Mojang API)
+ * - persist:  hand the vote to the batched vote writer (single thread, keeps votes in order)
+ * - evaluate: work out which reward triggers fire (single thread)
+ *
+ * A lookup that fails for any reason other than an unknown player (Mojang down, rate
+ * limited, timed out) is retried after a growing delay, up to vote_pipeline.resolve_retries
+ * times. After that, or when its batch fails to write, a journaled vote is left pending in
+ * the vote journal and VoteManager submits it again after journal.retry_seconds.
+ *
+ * Only the final delivery step (inventory, commands and messages) hops back to the
+ * main thread through the Bukkit scheduler. Votes drained while the plugin is disabling
+ * are delivered by shutdown() itself, which runs on the main thread.
+ *
+ * Handing a vote to a stage never blocks: votes arrive on the main thread and persisted
+ * votes continue from the vote writer's thread. When a stage queue is full, a vote that
+ * is in the vote journal and not yet written is shed, left pending in the journal and
+ * resubmitted by VoteManager once the resolve and persist stages are less than half
+ * full. Any other vote is offered to the stage again a moment later.
+ */
+
+public class VotePipeline {
+    private static final long RESOLVE_RETRY_MS = 5000;
+    private static final long STAGE_RETRY_MS = 100;   // offer a vote to a full stage again
+    private static final long REDRIVE_MS = 250;       // check for shed votes to resubmit
+
+    private final DelphiVote plugin;
+    private final Logger logger;
+    private final VoteManager voteManager;
+    private final ThreadPoolExecutor resolveStage;
+    private final ThreadPoolExecutor persistStage;
+    private final ThreadPoolExecutor evaluateStage;
+    private final ScheduledThreadPoolExecutor retryTimer;
+    private final ScheduledFuture<?> redriveTask;
+    private final int queueSize;
+    private final int resolveRetries;
+    private final ConcurrentLinkedQueue<Runnable> shutdownTasks = new ConcurrentLinkedQueue<>();
+
+    // Constructor
+    public VotePipeline(DelphiVote plugin, VoteManager voteManager, int queueSize, int resolveThreads, int resolveRetries) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.voteManager = voteManager;
+        this.resolveStage = createStage("resolve", Math.max(1, resolveThreads), queueSize);
+        this.persistStage = createStage("persist", 1, queueSize);
+        this.evaluateStage = createStage("evaluate", 1, queueSize);
+        this.queueSize = queueSize;
+        this.resolveRetries = Math.max(0, resolveRetries);
+        this.retryTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "DelphiVote-vote-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryTimer.setRemoveOnCancelPolicy(true);
+        this.redriveTask = retryTimer.scheduleWithFixedDelay(this::redrive, REDRIVE_MS, REDRIVE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Submit a vote to the first stage, never blocks
+    public void submit(PendingVote vote) {
+        handOff(resolveStage, vote, () -> resolve(vote));
+    }
+
+    // Queue a vote's next step on a stage without waiting for space: a full stage sheds a journaled
+    // vote that isn't written yet back to the journal, anything else is offered again shortly
+    private void handOff(ThreadPoolExecutor stage, PendingVote vote, Runnable task) {
+        try {
+            stage.execute(task);
+            return;
+        } catch (RejectedExecutionException e) {
+            if (stage.isShutdown()) {
+                throw e;
+            }
+        }
+        if (!vote.persisted && vote.journalId >= 0) {
+            voteManager.shedVote(vote);
+            return;
+        }
+        try {
+            retryTimer.schedule(() -> handOff(stage, vote, task), STAGE_RETRY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopping, the stage is still draining so waiting for space ends
+            try {
+                stage.getQueue().put(task);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                logger.severe("Interrupted while queueing the vote for " + vote.tgt_playerName);
+            }
+        }
+    }
+
+    // Resubmit parked votes once the stages they wait for have room again
+    private void redrive() {
+        int room = Math.min(resolveStage.getQueue().remainingCapacity(), persistStage.getQueue().remainingCapacity());
+        if (room > queueSize / 2) {
+            try {
+                voteManager.redriveParkedVotes(room - queueSize / 2);
+            } catch (Exception e) {
+                logger.severe("Error resubmitting votes from the vote journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Stage 1: resolve target player
+    private void resolve(PendingVote vote) {
+        try {
+            voteManager.resolveVote(vote);
+        } catch (PlayerNotFoundException e) {
+            runOnMain(() -> voteManager.rejectVote(vote));
+            return;
+        } catch (Exception e) {
+            retryResolve(vote, e);
+            return;
+        }
+        handOff(persistStage, vote, () -> persist(vote));
+    }
+
+    // The lookup failed but the player may exist, try again after a delay that doubles each attempt
+    private void retryResolve(PendingVote vote, Exception e) {
+        if (vote.resolveAttempts >= resolveRetries || retryTimer.isShutdown()) {
+            boolean retrying = !retryTimer.isShutdown() && voteManager.retryVote(vote);
+            logger.severe("Error resolving vote for " + vote.tgt_playerName + ", giving up after " + (vote.resolveAttempts + 1) + " attempts"
+                + (retrying ? ", trying again from the vote journal in " + voteManager.getRetrySeconds() + " s"
+                    : vote.journalId >= 0 ? ", it will be replayed from the vote journal on the next start" : "") + ": " + e.getMessage());
+            return;
+        }
+        long delayMs = RESOLVE_RETRY_MS << vote.resolveAttempts;
+        vote.resolveAttempts++;
+        logger.warning("Error resolving vote for " + vote.tgt_playerName + ", retrying in " + delayMs / 1000 + " s: " + e.getMessage());
+        try {
+            retryTimer.schedule(() -> {
+                try {
+                    submit(vote);
+                } catch (RejectedExecutionException rejected) {
+                    logger.warning("Vote pipeline stopped before retrying the vote for " + vote.tgt_playerName);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejected) {
+            logger.severe("Vote pipeline stopped before retrying the vote for " + vote.tgt_playerName);
+        }
+    }
+
+    // Stage 2: persist vote, votes are handed to the batch writer in order and
+    // continue to the evaluate stage in commit order
+    private void persist(PendingVote vote) {
+        try {
+            voteManager.persistVote(vote).whenComplete((counts, error) -> {
+                if (error == null) {
+                    vote.persisted = true;
+                    vote.playerVoteCount = counts.playerVoteCount();
+                    vote.serverVoteCount = counts.serverVoteCount();
+                } else {
+                    voteManager.retryVote(vote);
+                }
+                handOff(evaluateStage, vote, () -> evaluate(vote));
+            });
+        } catch (Exception e) {
+            logger.severe("Error persisting vote for " + vote.tgt_playerName + ": " + e.getMessage());
+            voteManager.retryVote(vote);
+            handOff(evaluateStage, vote, () -> evaluate(vote));
+        }
+    }
+
+    // Stage 3: evaluate triggers, then hand off to the main thread
+    private void evaluate(PendingVote vote) {
+        try {
+            voteManager.evaluateVote(vote);
+        } catch (Exception e) {
+            logger.severe("Error evaluating triggers for " + vote.tgt_playerName + ": " + e.getMessage());
+        }
+        runOnMain(() -> voteManager.deliverVote(vote));
+    }
+
+    // Run a task on the server main thread, once the plugin is disabling the scheduler won't take
+    // it so it waits for shutdown()
+    private void runOnMain(Runnable task) {
+        if (!plugin.isEnabled()) {
+            shutdownTasks.add(task);
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, task);
+    }
+
+    // Number of votes waiting in each stage or to retry, less the redrive task
+    public int getQueuedVotes() {
+        return Math.max(0, retryTimer.getQueue().size() - 1) + resolveStage.getQueue().size() + persistStage.getQueue().size() + evaluateStage.getQueue().size();
+    }
+
+    // Drain each stage in order, stop the workers, then deliver the drained votes (main thread)
+    public void shutdown() {
+        redriveTask.cancel(false);
+        int retrying = retryTimer.shutdownNow().size();
+        if (retrying > 0) {
+            logger.warning(retrying + " votes waiting to retry their player lookup are left for the next start");
+        }
+        shutdownStage("resolve", resolveStage);
+        shutdownStage("persist", persistStage);
+        plugin.getDatabaseManager().flushVotes();
+        shutdownStage("evaluate", evaluateStage);
+
+        if (!shutdownTasks.isEmpty()) {
+            logger.info("Delivering " + shutdownTasks.size() + " votes drained at shutdown");
+        }
+        Runnable task;
+        while ((task = shutdownTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.severe("Error delivering vote at shutdown: " + e.getMessage());
+            }
+        }
+    }
+
+    private void shutdownStage(String name, ThreadPoolExecutor stage) {
+        stage.shutdown();
+        try {
+            if (!stage.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Vote pipeline stage " + name + " did not drain, " + stage.getQueue().size() + " votes dropped");
+                stage.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            stage.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Create a stage with a bounded queue; a full queue rejects the task, see handOff
+    private ThreadPoolExecutor createStage(String name, int threads, int queueSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "DelphiVote-" + name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), threadFactory, (task, executor) -> {
+                throw new RejectedExecutionException("Vote pipeline stage " + name + (executor.isShutdown() ? " is shut down" : " is full"));
+            });
+    }
+}
@@ -0,0 +1,93 @@
+package com.playdelphi;
+
+import com.playdelphi.exceptions.StoreException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * VoteStore is where votes, players and offline rewards are kept.
+ *
+ * DatabaseManager owns the in-memory counters, leaderboards and vote batching and
+ * uses a VoteStore only for storage. The store is picked by database.type:
+ *   sqlite, mysql  JdbcVoteStore, tables from database.yml
+ *   memory         MemoryVoteStore, nothing is kept across restarts
+ *   file           FileVoteStore, an append-only log replayed into memory at startup
+ *
+ * Methods other than insertVotes log their own errors and return null or an empty
+ * result, so callers only handle the failure that decides whether a vote counted.
+ * Every store must give the same answers for the same calls, see the notes on each
+ * method for the rules that aren't obvious.
+ */
+
+public interface VoteStore {
+
+    // Receives recent votes with their dedup stamp (0 for none) and age in seconds
+    interface RecentVoteConsumer {
+        void accept(UUID uuid, String playerName, String serviceName, long voteStamp, long ageSeconds);
+    }
+
+    // Record a batch of votes at the current time, either all of them or none; a replayed vote whose
+    // key is already stored is skipped and marked duplicate, the key is kept with every other vote
+    void insertVotes(List<VoteBatchWriter.QueuedVote> votes) throws StoreException;
+
+    // Votes per player, including rolled up votes, null if the votes can't be read
+    Map<UUID, Integer> countVotesByPlayer();
+
+    // Latest name for each player: the players table wins over the name on their latest vote,
+    // voters are players that may only have rolled up votes left
+    Map<UUID, String> getLatestPlayerNames(Set<UUID> voters);
+
+    // Stream votes recorded within the last windowSeconds, oldest first
+    void forEachRecentVote(long windowSeconds, RecentVoteConsumer consumer);
+
+    // When the player last voted, null if never
+    Timestamp getLastVoteTime(UUID uuid);
+
+    // Fold up to limit votes older than olderThanDays into daily totals, returns the number folded
+    // (0 for stores that keep every vote)
+    int rollupVotes(int olderThanDays, int limit);
+
+    // Insert the player or update their name and last seen time; a new player's claim watermark
+    // starts at the latest grant so they don't receive rewards granted before they joined
+    void addOrUpdatePlayer(UUID uuid, String playerName);
+
+    // UUID of a player in the players table by name in any case, the latest seen if an old name
+    // is still held by someone else; null if unknown
+    UUID getPlayerUUID(String playerName);
+
+    // Up to limit players from the players table that come after the given one in the store's
+    // own fixed order, starting from the first when after is null; null if they can't be read
+    List<UUID> getPlayersAfter(UUID after, int limit);
+
+    // Name of a player in the players table, null if unknown
+    String getPlayerName(UUID uuid);
+
+    void addOfflineReward(UUID uuid, String rewardId, String serviceName);
+
+    // Grant each of the rewards to every player in the players table, one grant per reward with
+    // ids that only ever increase; players collect them through getOfflineRewards
+    void addRewardGrants(List<String> rewardIds, String serviceName);
+
+    // Pending rewards for a player: their own offline rewards with grant id 0, then the grants
+    // above their watermark in id order
+    List<OfflineReward> getOfflineRewards(UUID uuid);
+
+    // Remove every offline reward of the player with this id
+    void removeOfflineReward(UUID uuid, String rewardId);
+
+    // Move the player's watermark up to grantId, marking every grant up to it as claimed
+    void claimRewardGrants(UUID uuid, long grantId);
+
+    // Delete up to limit offline rewards and up to limit grants given before cutoffTime, returns
+    // the number deleted (0 once there are none left); the newest grant is always kept so grant
+    // ids are never reused. Stores held in memory may delete them all at once
+    int expireRewards(long cutoffTime, int limit);
+
+    // True while schema changes are still being applied in the background
+    boolean isMigrating();
+
+    void close();
+}
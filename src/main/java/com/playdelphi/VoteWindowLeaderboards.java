@@ -0,0 +1,140 @@
+package com.playdelphi;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * VoteWindowLeaderboards keeps rolling day, week and month leaderboards.
+ *
+ * Votes are counted into hourly buckets held in a ring as long as the longest period.
+ * Each period keeps running per-player totals and a VoteLeaderboard. When the hour
+ * changes, the bucket that just left a period is subtracted from that period's totals.
+ * Expiry never rescans vote_ts, and its cost depends only on the players in the
+ * expired bucket.
+ */
+
+public class VoteWindowLeaderboards {
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    private final int ringHours;
+    private final Map<UUID, int[]>[] buckets;
+    private final Map<VotePeriod, Map<UUID, int[]>> totals = new EnumMap<>(VotePeriod.class);
+    private final Map<VotePeriod, VoteLeaderboard> leaderboards = new EnumMap<>(VotePeriod.class);
+    private long currentHour;
+
+    // Constructor
+    @SuppressWarnings("unchecked")
+    public VoteWindowLeaderboards() {
+        int longest = 0;
+        for (VotePeriod period : VotePeriod.values()) {
+            if (period.hours > 0) {
+                totals.put(period, new HashMap<>());
+                leaderboards.put(period, new VoteLeaderboard());
+                longest = Math.max(longest, period.hours);
+            }
+        }
+        this.ringHours = longest;
+        this.buckets = new Map[ringHours];
+        this.currentHour = System.currentTimeMillis() / HOUR_MILLIS;
+    }
+
+    // Clear all counts and set player names
+    public synchronized void reset(Map<UUID, String> playerNames, long now) {
+        clear(now);
+        for (VoteLeaderboard leaderboard : leaderboards.values()) {
+            leaderboard.load(Map.of(), playerNames);
+        }
+    }
+
+    // Count a vote cast at voteTime
+    public synchronized void add(UUID uuid, long voteTime, long now) {
+        advance(now);
+        long hour = Math.min(voteTime / HOUR_MILLIS, currentHour); // clock skew, count it as now
+        if (hour <= currentHour - ringHours) {
+            return;
+        }
+        int slot = (int) (hour % ringHours);
+        if (buckets[slot] == null) {
+            buckets[slot] = new HashMap<>();
+        }
+        buckets[slot].computeIfAbsent(uuid, key -> new int[1])[0]++;
+
+        for (Map.Entry<VotePeriod, Map<UUID, int[]>> entry : totals.entrySet()) {
+            VotePeriod period = entry.getKey();
+            if (hour > currentHour - period.hours) {
+                int[] total = entry.getValue().computeIfAbsent(uuid, key -> new int[1]);
+                total[0]++;
+                leaderboards.get(period).update(uuid, total[0]);
+            }
+        }
+    }
+
+    // Record the latest name for a player
+    public synchronized void setName(UUID uuid, String playerName) {
+        for (VoteLeaderboard leaderboard : leaderboards.values()) {
+            leaderboard.setName(uuid, playerName);
+        }
+    }
+
+    // Leaderboard for a period, brought up to date first
+    public synchronized VoteLeaderboard getLeaderboard(VotePeriod period, long now) {
+        advance(now);
+        return leaderboards.get(period);
+    }
+
+    // Votes a player has within a period
+    public synchronized int getPlayerVotes(VotePeriod period, UUID uuid, long now) {
+        advance(now);
+        int[] total = totals.get(period).get(uuid);
+        return total == null ? 0 : total[0];
+    }
+
+    // Rotate hourly buckets up to now, dropping buckets that left each period
+    private void advance(long now) {
+        long hour = now / HOUR_MILLIS;
+        if (hour <= currentHour) {
+            return;
+        }
+        if (hour - currentHour >= ringHours) {
+            // nothing left in any period
+            clear(now);
+            return;
+        }
+        while (currentHour < hour) {
+            currentHour++;
+            for (Map.Entry<VotePeriod, Map<UUID, int[]>> entry : totals.entrySet()) {
+                VotePeriod period = entry.getKey();
+                Map<UUID, int[]> expired = buckets[(int) ((currentHour - period.hours) % ringHours)];
+                if (expired != null) {
+                    subtract(period, entry.getValue(), expired);
+                }
+            }
+            buckets[(int) (currentHour % ringHours)] = null;
+        }
+    }
+
+    private void clear(long now) {
+        for (int i = 0; i < ringHours; i++) {
+            buckets[i] = null;
+        }
+        for (VotePeriod period : totals.keySet()) {
+            totals.get(period).clear();
+            leaderboards.get(period).clear();
+        }
+        currentHour = now / HOUR_MILLIS;
+    }
+
+    private void subtract(VotePeriod period, Map<UUID, int[]> periodTotals, Map<UUID, int[]> expired) {
+        VoteLeaderboard leaderboard = leaderboards.get(period);
+        for (Map.Entry<UUID, int[]> entry : expired.entrySet()) {
+            int[] total = periodTotals.get(entry.getKey());
+            total[0] -= entry.getValue()[0];
+            if (total[0] <= 0) {
+                periodTotals.remove(entry.getKey());
+            }
+            leaderboard.update(entry.getKey(), total[0]);
+        }
+    }
+}
@@ -202,9 +202,9 @@ public class YamlManager {
                     }
                 }
             } 
-            // Handle string values
+            // Handle string values, null stays empty so the key keeps no value
             else {    
-                String stringValue = formatValue(value != null ? value.toString() : "");
+                String stringValue = value != null ? formatValue(value.toString()) : "";
                 builder.append(stringValue).append("\n");
             }
         }
@@ -228,10 +228,12 @@ public class YamlManager {
         // Escape any actual newlines in the string
         value = value.replace("\n", "\\n");
         
-        // Preserve existing quotes and formatting
+        // Preserve existing quotes and formatting; empty strings and values starting with a YAML
+        // indicator (like the * in a cron schedule) only read back the same when quoted
         if (value.contains("\"") || value.contains("\\n") || 
             value.contains("&") || value.startsWith(" ") || 
-            value.endsWith(" ")) {
+            value.endsWith(" ") || value.isEmpty() ||
+            "*!%@`{[|>".indexOf(value.charAt(0)) >= 0) {
             // Keep existing quotes if they exist
             if (!value.startsWith("\"")) {
                 value = "\"" + value + "\"";
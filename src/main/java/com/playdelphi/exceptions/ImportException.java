@@ -0,0 +1,12 @@
+package com.playdelphi.exceptions;
+
+// For vote imports that can't read their source or write a batch
+public class ImportException extends Exception {
+    public ImportException(String message) {
+        super(message);
+    }
+
+    public ImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
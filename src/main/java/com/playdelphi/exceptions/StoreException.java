@@ -0,0 +1,8 @@
+package com.playdelphi.exceptions;
+
+// For storage failures that lose a write
+public class StoreException extends Exception {
+    public StoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
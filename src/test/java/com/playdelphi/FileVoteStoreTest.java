@@ -0,0 +1,63 @@
+package com.playdelphi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class FileVoteStoreTest extends VoteStoreConformanceTest {
+
+    @Override
+    VoteStore openStore(File pluginFolder) {
+        return new FileVoteStore(pluginFolder, logger);
+    }
+
+    File logFile() {
+        return new File(pluginFolder, "data/delphivote.log");
+    }
+
+    @Test
+    void dropsADamagedTail() throws Exception {
+        store.insertVotes(votes(ALICE, "alice", "svc1"));
+        store.close();
+        long goodLength = logFile().length();
+        try (FileOutputStream out = new FileOutputStream(logFile(), true)) {
+            out.write(new byte[] {0, 0, 0, 9, 1, 2, 3});
+        }
+
+        store = reopen();
+        assertEquals(goodLength, logFile().length());
+        assertEquals(Map.of(ALICE, 1), store.countVotesByPlayer());
+
+        // appends carry on after the last good record
+        store.insertVotes(votes(BOB, "bob", "svc1"));
+        store.close();
+        store = reopen();
+        assertEquals(Map.of(ALICE, 1, BOB, 1), store.countVotesByPlayer());
+    }
+
+    @Test
+    void compactionKeepsWatermarksAndGrantIds() throws Exception {
+        store.addOrUpdatePlayer(ALICE, "alice");
+        store.addOrUpdatePlayer(BOB, "bob");
+        for (int i = 1; i <= 6000; i++) {
+            store.addRewardGrants(List.of("g" + i), "svc");
+            store.claimRewardGrants(ALICE, i);
+        }
+        store.expireRewards(System.currentTimeMillis() + 60000, 1000);
+        store.close();
+        long before = logFile().length();
+
+        store = reopen();
+        assertTrue(logFile().length() < before, "log compacted from " + before + " to " + logFile().length());
+        assertTrue(pending(ALICE).isEmpty());
+        assertEquals(List.of("g6000#6000"), pending(BOB));
+
+        store.addRewardGrants(List.of("next"), "svc");
+        assertEquals(List.of("next#6001"), pending(ALICE));
+    }
+}
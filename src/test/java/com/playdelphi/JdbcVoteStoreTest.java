@@ -0,0 +1,28 @@
+package com.playdelphi;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+// SQLite in a temporary plugin folder
+class JdbcVoteStoreTest extends VoteStoreConformanceTest {
+
+    // config.yml settings for the store
+    YamlConfiguration config() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.table_prefix", "dv");
+        return config;
+    }
+
+    @Override
+    VoteStore openStore(File pluginFolder) throws Exception {
+        YamlConfiguration databaseConfig;
+        try (InputStream in = JdbcVoteStoreTest.class.getResourceAsStream("/database.yml")) {
+            databaseConfig = YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        return new JdbcVoteStore(config(), databaseConfig, pluginFolder, logger, false);
+    }
+}
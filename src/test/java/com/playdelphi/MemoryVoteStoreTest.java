@@ -0,0 +1,16 @@
+package com.playdelphi;
+
+import java.io.File;
+
+class MemoryVoteStoreTest extends VoteStoreConformanceTest {
+
+    @Override
+    VoteStore openStore(File pluginFolder) {
+        return new MemoryVoteStore();
+    }
+
+    @Override
+    boolean keepsStateOnReopen() {
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+package com.playdelphi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.playdelphi.exceptions.OtherException;
+import com.playdelphi.exceptions.PlayerNotFoundException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * UUIDResolver's lookup layers and cache, with a local server standing in for the Mojang
+ * bulk profile API.
+ */
+
+class UUIDResolverTest {
+    static final Logger logger = Logger.getLogger("DelphiVote");
+    static final UUID STORED = new UUID(1, 1);
+    static final UUID MOJANG = new UUID(2, 2);
+    static final UUID ONLINE = new UUID(3, 3);
+    static final long MINUTE = 60 * 1000;
+
+    HttpServer server;
+    final Map<String, UUID> mojangPlayers = new ConcurrentHashMap<>();
+    final AtomicInteger mojangRequests = new AtomicInteger();
+    volatile int mojangStatus = 200;
+
+    MemoryVoteStore store;
+    UtilsManager utilsManager;
+    UUIDResolver resolver;
+    final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/bulk", this::bulkLookup);
+        server.start();
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("uuid_lookup.bulk_api_url", "http://127.0.0.1:" + server.getAddress().getPort() + "/bulk");
+        config.set("uuid_lookup.batch_window_ms", 0);
+        config.set("uuid_lookup.max_wait_ms", 5000);
+        config.set("uuid_lookup.cache_minutes", 60);
+        config.set("uuid_lookup.not_found_minutes", 5);
+
+        store = new MemoryVoteStore();
+        utilsManager = new UtilsManager(config, logger);
+        resolver = new UUIDResolver(config, logger, store, utilsManager) {
+            @Override
+            long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+    }
+
+    @AfterEach
+    void stop() {
+        utilsManager.shutdown();
+        server.stop(0);
+    }
+
+    // Answers like the Mojang bulk endpoint: profiles for the names it knows, the rest left out
+    void bulkLookup(HttpExchange exchange) throws IOException {
+        mojangRequests.incrementAndGet();
+        JsonArray profiles = new JsonArray();
+        JsonArray names = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonArray();
+        for (JsonElement name : names) {
+            UUID uuid = mojangPlayers.get(name.getAsString().toLowerCase());
+            if (uuid != null) {
+                JsonObject profile = new JsonObject();
+                profile.addProperty("id", uuid.toString().replace("-", ""));
+                profile.addProperty("name", name.getAsString());
+                profiles.add(profile);
+            }
+        }
+        byte[] body = profiles.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(mojangStatus, mojangStatus == 200 ? body.length : -1);
+        if (mojangStatus == 200) {
+            exchange.getResponseBody().write(body);
+        }
+        exchange.close();
+    }
+
+    static Player player(String name, UUID uuid) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] {Player.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            case "getUniqueId" -> uuid;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @Test
+    void checksLayersInOrder() {
+        mojangPlayers.put("steve", MOJANG);
+        mojangPlayers.put("alex", MOJANG);
+        store.addOrUpdatePlayer(STORED, "Steve");
+
+        // players table before Mojang
+        assertEquals(STORED, resolver.resolve("Steve"));
+        assertEquals(0, mojangRequests.get());
+
+        // online players before everything else
+        resolver.playerOnline(player("Steve", ONLINE));
+        assertEquals(ONLINE, resolver.resolve("steve"));
+
+        // Mojang last, then served from the cache
+        assertEquals(MOJANG, resolver.resolve("Alex"));
+        assertEquals(MOJANG, resolver.resolve("alex"));
+        assertEquals(1, mojangRequests.get());
+    }
+
+    @Test
+    void matchesStoredNamesInAnyCase() {
+        store.addOrUpdatePlayer(STORED, "Notch");
+
+        assertEquals(STORED, resolver.resolve("NOTCH"));
+        assertEquals(0, mojangRequests.get());
+    }
+
+    @Test
+    void cachesNotFoundUntilItExpires() {
+        assertThrows(PlayerNotFoundException.class, () -> resolver.resolve("ghost"));
+        assertThrows(PlayerNotFoundException.class, () -> resolver.resolve("Ghost"));
+        assertEquals(1, mojangRequests.get());
+
+        mojangPlayers.put("ghost", MOJANG);
+        clock.addAndGet(5 * MINUTE + 1);
+        assertEquals(MOJANG, resolver.resolve("ghost"));
+        assertEquals(2, mojangRequests.get());
+    }
+
+    @Test
+    void expiresFoundPlayers() {
+        mojangPlayers.put("alex", MOJANG);
+        assertEquals(MOJANG, resolver.resolve("alex"));
+
+        clock.addAndGet(59 * MINUTE);
+        assertEquals(MOJANG, resolver.resolve("alex"));
+        assertEquals(1, mojangRequests.get());
+
+        clock.addAndGet(MINUTE + 1);
+        assertEquals(MOJANG, resolver.resolve("alex"));
+        assertEquals(2, mojangRequests.get());
+    }
+
+    @Test
+    void doesNotCacheFailedLookups() {
+        mojangPlayers.put("alex", MOJANG);
+        mojangStatus = 500;
+        assertThrows(OtherException.class, () -> resolver.resolve("alex"));
+
+        mojangStatus = 200;
+        assertEquals(MOJANG, resolver.resolve("alex"));
+        assertEquals(2, mojangRequests.get());
+    }
+}
@@ -0,0 +1,298 @@
+package com.playdelphi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The rules every VoteStore has to follow, see the notes in VoteStore. Each store has a
+ * subclass that opens it in a fresh plugin folder.
+ */
+
+abstract class VoteStoreConformanceTest {
+    static final Logger logger = Logger.getLogger("DelphiVote");
+    static final UUID ALICE = new UUID(1, 1);
+    static final UUID BOB = new UUID(2, 2);
+    static final UUID CAROL = new UUID(3, 3);
+
+    @TempDir
+    File pluginFolder;
+
+    VoteStore store;
+
+    // Open the store kept in the plugin folder
+    abstract VoteStore openStore(File pluginFolder) throws Exception;
+
+    // False for stores that keep nothing across restarts
+    boolean keepsStateOnReopen() {
+        return true;
+    }
+
+    @BeforeEach
+    void open() throws Exception {
+        store = reopen();
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    VoteStore reopen() throws Exception {
+        VoteStore opened = openStore(pluginFolder);
+        while (opened.isMigrating()) {
+            Thread.sleep(20);
+        }
+        return opened;
+    }
+
+    static List<VoteBatchWriter.QueuedVote> votes(Object... uuidNameService) {
+        List<VoteBatchWriter.QueuedVote> votes = new ArrayList<>();
+        for (int i = 0; i < uuidNameService.length; i += 3) {
+            PlayerEnv playerEnv = new PlayerEnv((UUID) uuidNameService[i]);
+            playerEnv.name = (String) uuidNameService[i + 1];
+            votes.add(new VoteBatchWriter.QueuedVote(playerEnv, (String) uuidNameService[i + 2]));
+        }
+        return votes;
+    }
+
+    // Pending rewards as id#grant, in the order the store returns them
+    List<String> pending(UUID uuid) {
+        List<String> pending = new ArrayList<>();
+        for (OfflineReward reward : store.getOfflineRewards(uuid)) {
+            pending.add(reward.rewardId() + "#" + reward.grantId());
+        }
+        return pending;
+    }
+
+    @Test
+    void countsVotesPerPlayer() throws Exception {
+        assertTrue(store.countVotesByPlayer().isEmpty());
+
+        store.insertVotes(votes(ALICE, "alice", "svc1", BOB, "bob", "svc1", ALICE, "alice", "svc2"));
+        store.insertVotes(votes(CAROL, "carol", "svc3"));
+
+        assertEquals(Map.of(ALICE, 2, BOB, 1, CAROL, 1), store.countVotesByPlayer());
+    }
+
+    @Test
+    void storesReplayedVoteOnce() throws Exception {
+        PlayerEnv alice = new PlayerEnv(ALICE);
+        alice.name = "alice";
+        long receivedTs = System.currentTimeMillis();
+        store.insertVotes(List.of(new VoteBatchWriter.QueuedVote(alice, "svc1", 42, 0, receivedTs, false)));
+
+        if (keepsStateOnReopen()) {
+            store.close();
+            store = reopen();
+        }
+        VoteBatchWriter.QueuedVote replayed = new VoteBatchWriter.QueuedVote(alice, "svc1", 42, 0, receivedTs, true);
+        VoteBatchWriter.QueuedVote other = new VoteBatchWriter.QueuedVote(alice, "svc2", 43, 0, receivedTs, true);
+        store.insertVotes(List.of(replayed, other));
+
+        assertTrue(replayed.duplicate);
+        assertTrue(!other.duplicate);
+        assertEquals(Map.of(ALICE, 2), store.countVotesByPlayer());
+    }
+
+    @Test
+    void recordsLastVoteTime() throws Exception {
+        assertNull(store.getLastVoteTime(ALICE));
+
+        store.insertVotes(votes(ALICE, "alice", "svc1"));
+
+        Timestamp lastVote = store.getLastVoteTime(ALICE);
+        assertNotNull(lastVote);
+        assertTrue(Math.abs(lastVote.getTime() - System.currentTimeMillis()) < 5000, "last vote " + lastVote);
+    }
+
+    @Test
+    void playersTableNameWinsOverVoteName() throws Exception {
+        store.insertVotes(votes(ALICE, "alice", "svc1", BOB, "bob", "svc1", ALICE, "alice2", "svc2"));
+        Set<UUID> voters = Set.of(ALICE, BOB);
+        assertEquals(Map.of(ALICE, "alice2", BOB, "bob"), store.getLatestPlayerNames(voters));
+
+        store.addOrUpdatePlayer(BOB, "bobby");
+        assertEquals("bobby", store.getLatestPlayerNames(voters).get(BOB));
+    }
+
+    @Test
+    void findsPlayersByCurrentName() {
+        store.addOrUpdatePlayer(BOB, "bobby");
+        assertEquals(BOB, store.getPlayerUUID("bobby"));
+        assertNull(store.getPlayerUUID("nobody"));
+
+        store.addOrUpdatePlayer(BOB, "robert");
+        assertNull(store.getPlayerUUID("bobby"));
+        assertEquals(BOB, store.getPlayerUUID("robert"));
+        assertEquals(BOB, store.getPlayerUUID("Robert"));
+        assertEquals("robert", store.getPlayerName(BOB));
+        assertNull(store.getPlayerName(CAROL));
+    }
+
+    @Test
+    void pagesThroughEveryPlayerOnce() {
+        Set<UUID> players = new HashSet<>();
+        for (int i = 0; i < 7; i++) {
+            UUID uuid = new UUID(10, i);
+            players.add(uuid);
+            store.addOrUpdatePlayer(uuid, "player" + i);
+        }
+
+        List<UUID> seen = new ArrayList<>();
+        List<UUID> page = store.getPlayersAfter(null, 3);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 3);
+            seen.addAll(page);
+            page = store.getPlayersAfter(page.get(page.size() - 1), 3);
+        }
+        assertEquals(players.size(), seen.size());
+        assertEquals(players, new HashSet<>(seen));
+    }
+
+    @Test
+    void streamsRecentVotesOldestFirst() throws Exception {
+        store.insertVotes(votes(ALICE, "alice", "svc1", BOB, "bob", "svc1"));
+        Thread.sleep(1100);
+        store.insertVotes(votes(CAROL, "carol", "svc3"));
+
+        List<String> recent = new ArrayList<>();
+        store.forEachRecentVote(600, (uuid, playerName, serviceName, voteStamp, ageSeconds) -> {
+            assertTrue(ageSeconds >= 0 && ageSeconds < 10, "age " + ageSeconds);
+            recent.add(playerName + "/" + serviceName);
+        });
+        assertEquals(3, recent.size());
+        assertEquals("carol/svc3", recent.get(2));
+    }
+
+    @Test
+    void keepsVoteStamps() throws Exception {
+        PlayerEnv alice = new PlayerEnv(ALICE);
+        alice.name = "alice";
+        long receivedTs = System.currentTimeMillis();
+        store.insertVotes(List.of(new VoteBatchWriter.QueuedVote(alice, "svc1", 1, 77, receivedTs, false),
+            new VoteBatchWriter.QueuedVote(alice, "Admin", 2, 0, receivedTs, false)));
+
+        if (keepsStateOnReopen()) {
+            store.close();
+            store = reopen();
+        }
+        List<Long> stamps = new ArrayList<>();
+        store.forEachRecentVote(600, (uuid, playerName, serviceName, voteStamp, ageSeconds) -> stamps.add(voteStamp));
+        assertEquals(List.of(77L, 0L), stamps);
+    }
+
+    @Test
+    void removesEveryOfflineRewardWithTheId() {
+        store.addOfflineReward(ALICE, "r1", "svc1");
+        store.addOfflineReward(ALICE, "r1", "svc2");
+        store.addOfflineReward(ALICE, "r2", "svc1");
+        assertEquals(3, store.getOfflineRewards(ALICE).size());
+        assertTrue(store.getOfflineRewards(BOB).isEmpty());
+
+        store.removeOfflineReward(ALICE, "r1");
+        assertEquals(List.of("r2#0"), pending(ALICE));
+    }
+
+    @Test
+    void expiresOfflineRewardsBeforeCutoff() {
+        store.addOfflineReward(ALICE, "r1", "svc1");
+        store.addOfflineReward(CAROL, "r2", "svc1");
+        assertTrue(store.getOfflineRewards(CAROL).get(0).rewardTime() > 0);
+
+        assertEquals(0, store.expireRewards(System.currentTimeMillis() - 60000, 1000));
+        assertEquals(2, store.expireRewards(System.currentTimeMillis() + 60000, 1000));
+        assertTrue(store.getOfflineRewards(ALICE).isEmpty());
+        assertTrue(store.getOfflineRewards(CAROL).isEmpty());
+    }
+
+    @Test
+    void grantsGoToKnownPlayersAfterTheirOwnRewards() {
+        store.addOrUpdatePlayer(ALICE, "alice");
+        store.addOrUpdatePlayer(BOB, "bob");
+        store.addRewardGrants(List.of("g1", "g2"), "svc");
+        store.addOfflineReward(ALICE, "p1", "svc");
+
+        assertEquals(List.of("p1#0", "g1#1", "g2#2"), pending(ALICE));
+        assertEquals(List.of("g1#1", "g2#2"), pending(BOB));
+
+        // players who join later only get later grants
+        store.addOrUpdatePlayer(CAROL, "carol");
+        assertTrue(pending(CAROL).isEmpty());
+        store.addRewardGrants(List.of("g3"), "svc");
+        assertEquals(List.of("g3#3"), pending(CAROL));
+    }
+
+    @Test
+    void claimsOnlyMoveTheWatermarkForward() {
+        store.addOrUpdatePlayer(ALICE, "alice");
+        store.addOrUpdatePlayer(BOB, "bob");
+        store.addRewardGrants(List.of("g1", "g2", "g3"), "svc");
+
+        store.claimRewardGrants(BOB, 2);
+        assertEquals(List.of("g3#3"), pending(BOB));
+
+        store.claimRewardGrants(ALICE, 3);
+        store.claimRewardGrants(ALICE, 1);
+        assertTrue(pending(ALICE).isEmpty());
+
+        // a rename keeps the watermark
+        store.addOrUpdatePlayer(ALICE, "alice2");
+        assertTrue(pending(ALICE).isEmpty());
+    }
+
+    @Test
+    void expiryKeepsTheNewestGrant() {
+        store.addOrUpdatePlayer(ALICE, "alice");
+        store.addRewardGrants(List.of("g1", "g2", "g3"), "svc");
+
+        assertEquals(2, store.expireRewards(System.currentTimeMillis() + 60000, 1000));
+        assertEquals(List.of("g3#3"), pending(ALICE));
+
+        // grant ids are never reused
+        store.addRewardGrants(List.of("g4"), "svc");
+        assertEquals(List.of("g3#3", "g4#4"), pending(ALICE));
+    }
+
+    @Test
+    void rollupLeavesRecentVotes() throws Exception {
+        store.insertVotes(votes(ALICE, "alice", "svc1", BOB, "bob", "svc1"));
+
+        assertEquals(0, store.rollupVotes(31, 100));
+        assertEquals(Map.of(ALICE, 1, BOB, 1), store.countVotesByPlayer());
+    }
+
+    @Test
+    void keepsStateAcrossReopen() throws Exception {
+        assumeTrue(keepsStateOnReopen());
+        store.insertVotes(votes(ALICE, "alice", "svc1", BOB, "bob", "svc1", ALICE, "alice", "svc2"));
+        store.addOrUpdatePlayer(BOB, "robert");
+        store.addOfflineReward(BOB, "r1", "svc1");
+        store.addRewardGrants(List.of("g1", "g2"), "svc");
+        store.claimRewardGrants(BOB, 1);
+        store.close();
+
+        store = reopen();
+        assertEquals(Map.of(ALICE, 2, BOB, 1), store.countVotesByPlayer());
+        assertEquals(BOB, store.getPlayerUUID("robert"));
+        assertEquals(List.of("r1#0", "g2#2"), pending(BOB));
+        store.addRewardGrants(List.of("g3"), "svc");
+        assertEquals(List.of("r1#0", "g2#2", "g3#3"), pending(BOB));
+    }
+}